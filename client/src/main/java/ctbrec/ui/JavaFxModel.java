@@ -13,7 +13,9 @@ import ctbrec.Model;
 import ctbrec.recorder.download.StreamSource;
 import ctbrec.sites.Site;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 
 /**
  * Just a wrapper for Model, which augments it with JavaFX value binding properties, so that UI widgets get updated proeprly
@@ -22,10 +24,12 @@ public class JavaFxModel implements Model {
     private transient BooleanProperty onlineProperty = new SimpleBooleanProperty();
     private transient BooleanProperty recordingProperty = new SimpleBooleanProperty();
     private transient BooleanProperty pausedProperty = new SimpleBooleanProperty();
+    private transient IntegerProperty priorityProperty = new SimpleIntegerProperty();
     private Model delegate;
 
     public JavaFxModel(Model delegate) {
         this.delegate = delegate;
+        priorityProperty.set(delegate.getPriority());
     }
 
     @Override
@@ -95,6 +99,10 @@ public class JavaFxModel implements Model {
         return pausedProperty;
     }
 
+    public IntegerProperty getPriorityProperty() {
+        return priorityProperty;
+    }
+
     Model getDelegate() {
         return delegate;
     }
@@ -198,6 +206,17 @@ public class JavaFxModel implements Model {
         pausedProperty.set(suspended);
     }
 
+    @Override
+    public int getPriority() {
+        return delegate.getPriority();
+    }
+
+    @Override
+    public void setPriority(int priority) {
+        delegate.setPriority(priority);
+        priorityProperty.set(delegate.getPriority());
+    }
+
     @Override
     public String getDisplayName() {
         return delegate.getDisplayName();
@@ -4,7 +4,9 @@ import java.time.Instant;
 
 import ctbrec.Config;
 import ctbrec.Recording;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.LongProperty;
+import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -14,12 +16,16 @@ public class JavaFxRecording extends Recording {
     private transient StringProperty statusProperty = new SimpleStringProperty();
     private transient StringProperty progressProperty = new SimpleStringProperty();
     private transient LongProperty sizeProperty = new SimpleLongProperty();
+    private transient DoubleProperty durationProperty = new SimpleDoubleProperty();
+    private transient LongProperty bitrateProperty = new SimpleLongProperty();
 
     private Recording delegate;
     private long lastValue = 0;
 
     public JavaFxRecording(Recording recording) {
         this.delegate = recording;
+        durationProperty.set(recording.getDurationInSeconds());
+        bitrateProperty.set(recording.getBitrate());
     }
 
     @Override
@@ -98,6 +104,27 @@ public class JavaFxRecording extends Recording {
     public void setSizeInByte(long sizeInByte) {
         delegate.setSizeInByte(sizeInByte);
         sizeProperty.set(sizeInByte);
+        bitrateProperty.set(getBitrate());
+    }
+
+    @Override
+    public double getDurationInSeconds() {
+        return delegate.getDurationInSeconds();
+    }
+
+    @Override
+    public void setDurationInSeconds(double durationInSeconds) {
+        delegate.setDurationInSeconds(durationInSeconds);
+        durationProperty.set(durationInSeconds);
+        bitrateProperty.set(getBitrate());
+    }
+
+    public DoubleProperty getDurationProperty() {
+        return durationProperty;
+    }
+
+    public LongProperty getBitrateProperty() {
+        return bitrateProperty;
     }
 
     public StringProperty getProgressProperty() {
@@ -130,6 +157,7 @@ public class JavaFxRecording extends Recording {
         setStatus(updated.getStatus());
         setProgress(updated.getProgress());
         setSizeInByte(updated.getSizeInByte());
+        setDurationInSeconds(updated.getDurationInSeconds());
     }
 
     @Override
@@ -15,6 +15,7 @@ import ctbrec.OS;
 import ctbrec.Recording;
 import ctbrec.io.DevNull;
 import ctbrec.io.StreamRedirectThread;
+import ctbrec.recorder.StoragePool;
 import ctbrec.recorder.download.StreamSource;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
@@ -119,7 +120,7 @@ public class Player {
             Runtime rt = Runtime.getRuntime();
             try {
                 if (Config.getInstance().getSettings().localRecording && rec != null) {
-                    File file = new File(Config.getInstance().getSettings().recordingsDir, rec.getPath());
+                    File file = new StoragePool(Config.getInstance()).resolve(rec.getPath());
                     String[] args = new String[] {
                             Config.getInstance().getSettings().mediaPlayer,
                             file.getName()
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -24,6 +25,7 @@ import ctbrec.Model;
 import ctbrec.Recording;
 import ctbrec.StringUtil;
 import ctbrec.recorder.Recorder;
+import ctbrec.recorder.RecordingQuery;
 import ctbrec.sites.Site;
 import ctbrec.ui.action.FollowAction;
 import ctbrec.ui.action.PauseAction;
@@ -31,6 +33,7 @@ import ctbrec.ui.action.PlayAction;
 import ctbrec.ui.action.ResumeAction;
 import ctbrec.ui.action.StopRecordingAction;
 import ctbrec.ui.controls.AutoFillTextField;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -53,6 +56,7 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.ContextMenuEvent;
@@ -64,6 +68,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
 import javafx.util.Duration;
+import javafx.util.converter.IntegerStringConverter;
 
 public class RecordedModelsTab extends Tab implements TabSelectionListener {
     private static final transient Logger LOG = LoggerFactory.getLogger(RecordedModelsTab.class);
@@ -144,7 +149,13 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
         paused.setCellFactory(CheckBoxTableCell.forTableColumn(paused));
         paused.setPrefWidth(100);
         paused.setEditable(true);
-        table.getColumns().addAll(preview, name, url, online, recording, paused);
+        TableColumn<JavaFxModel, Integer> priority = new TableColumn<>("Priority");
+        priority.setCellValueFactory(cdf -> cdf.getValue().getPriorityProperty().asObject());
+        priority.setCellFactory(TextFieldTableCell.forTableColumn(new IntegerStringConverter()));
+        priority.setPrefWidth(80);
+        priority.setEditable(true);
+        priority.setOnEditCommit(evt -> setPriority(evt.getRowValue(), evt.getNewValue()));
+        table.getColumns().addAll(preview, name, url, online, recording, paused, priority);
         table.setItems(observableModels);
         table.addEventHandler(ContextMenuEvent.CONTEXT_MENU_REQUESTED, event -> {
             popup = createContextMenu();
@@ -314,6 +325,7 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
                     // make sure to update the JavaFX online property, so that the table cell is updated
                     JavaFxModel oldModel = observableModels.get(index);
                     oldModel.setSuspended(updatedModel.isSuspended());
+                    oldModel.setPriority(updatedModel.getPriority());
                     oldModel.getOnlineProperty().set(updatedModel.getOnlineProperty().get());
                     oldModel.getRecordingProperty().set(updatedModel.getRecordingProperty().get());
                 }
@@ -341,7 +353,10 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
                     @Override
                     public List<JavaFxModel> call() throws InvalidKeyException, NoSuchAlgorithmException, IllegalStateException, IOException {
                         LOG.trace("Updating recorded models");
-                        List<Recording> recordings = recorder.getRecordings();
+                        RecordingQuery query = new RecordingQuery();
+                        query.states = Collections.singletonList(Recording.State.RECORDING);
+                        query.fields = Arrays.asList("modelName", "status");
+                        List<Recording> recordings = recorder.queryRecordings(query).recordings;
                         List<Model> onlineModels = recorder.getOnlineModels();
                         return recorder.getModelsRecording()
                                 .stream()
@@ -507,6 +522,21 @@ public class RecordedModelsTab extends Tab implements TabSelectionListener {
         });
     };
 
+    private void setPriority(JavaFxModel fxModel, Integer priority) {
+        if (priority == null) {
+            return;
+        }
+        fxModel.setPriority(priority);
+        new Thread(() -> {
+            try {
+                recorder.priorityChanged(fxModel.getDelegate());
+            } catch (InvalidKeyException | NoSuchAlgorithmException | IllegalStateException | IOException e) {
+                LOG.error("Couldn't change priority of {}", fxModel.getName(), e);
+                Platform.runLater(() -> showErrorDialog(e, "Couldn't change priority", "Error while changing the priority"));
+            }
+        }).start();
+    }
+
     private void pauseRecording(List<JavaFxModel> selectedModels) {
         List<Model> models = selectedModels.stream().map(jfxm -> jfxm.getDelegate()).collect(Collectors.toList());
         new PauseAction(getTabPane(), models, recorder).execute();
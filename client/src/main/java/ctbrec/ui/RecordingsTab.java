@@ -17,8 +17,10 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,7 +40,10 @@ import ctbrec.Recording;
 import ctbrec.Recording.State;
 import ctbrec.StringUtil;
 import ctbrec.recorder.Recorder;
+import ctbrec.recorder.RecordingQuery;
+import ctbrec.recorder.StoragePool;
 import ctbrec.recorder.download.MergedHlsDownload;
+import ctbrec.recorder.postprocessing.ThumbnailPostProcessor;
 import ctbrec.sites.Site;
 import ctbrec.ui.controls.Toast;
 import javafx.application.Platform;
@@ -49,7 +54,9 @@ import javafx.concurrent.ScheduledService;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Cursor;
+import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
@@ -62,8 +69,11 @@ import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableColumn.SortType;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.ContextMenuEvent;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -75,11 +85,13 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Font;
 import javafx.stage.FileChooser;
+import javafx.stage.Stage;
 import javafx.util.Callback;
 import javafx.util.Duration;
 
 public class RecordingsTab extends Tab implements TabSelectionListener {
     private static final transient Logger LOG = LoggerFactory.getLogger(RecordingsTab.class);
+    private static final int PAGE_SIZE = 100;
 
     private ScheduledService<List<JavaFxRecording>> updateService;
     private Config config;
@@ -88,6 +100,8 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
     private List<Site> sites;
     private long spaceTotal = -1;
     private long spaceFree = -1;
+    private int page = 0;
+    private volatile int total = 0;
 
     FlowPane grid = new FlowPane();
     ScrollPane scrollPane = new ScrollPane();
@@ -96,7 +110,13 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
     ContextMenu popup;
     ProgressBar spaceLeft;
     Label spaceLabel;
+    TextField filter;
+    Button previousPage;
+    Button nextPage;
+    Label pageLabel;
     Lock recordingsLock = new ReentrantLock();
+    /** the field of the recording query for each sortable column */
+    Map<TableColumn<JavaFxRecording, ?>, RecordingQuery.SortField> sortFields = new HashMap<>();
 
     public RecordingsTab(String title, Recorder recorder, Config config, List<Site> sites) {
         super(title);
@@ -154,6 +174,8 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         TableColumn<JavaFxRecording, String> progress = new TableColumn<>("Progress");
         progress.setCellValueFactory((cdf) -> cdf.getValue().getProgressProperty());
         progress.setPrefWidth(100);
+        // the recorder can't sort by progress
+        progress.setSortable(false);
         TableColumn<JavaFxRecording, Number> size = new TableColumn<>("Size");
         size.setStyle("-fx-alignment: CENTER-RIGHT;");
         size.setPrefWidth(100);
@@ -184,7 +206,43 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
             }
         });
 
-        table.getColumns().addAll(name, date, status, progress, size);
+        TableColumn<JavaFxRecording, Number> duration = new TableColumn<>("Duration");
+        duration.setPrefWidth(100);
+        duration.setCellValueFactory(cdf -> cdf.getValue().getDurationProperty());
+        duration.setCellFactory(param -> new TableCell<JavaFxRecording, Number>() {
+            @Override
+            protected void updateItem(Number seconds, boolean empty) {
+                if(empty || seconds == null || seconds.doubleValue() <= 0) {
+                    setText(null);
+                } else {
+                    long s = seconds.longValue();
+                    setText(String.format("%d:%02d:%02d", s / 3600, (s % 3600) / 60, s % 60));
+                }
+                setStyle("-fx-alignment: CENTER-RIGHT;");
+            }
+        });
+        TableColumn<JavaFxRecording, Number> bitrate = new TableColumn<>("Bitrate");
+        bitrate.setPrefWidth(100);
+        bitrate.setCellValueFactory(cdf -> cdf.getValue().getBitrateProperty());
+        bitrate.setCellFactory(param -> new TableCell<JavaFxRecording, Number>() {
+            @Override
+            protected void updateItem(Number bitsPerSecond, boolean empty) {
+                if(empty || bitsPerSecond == null || bitsPerSecond.longValue() <= 0) {
+                    setText(null);
+                } else {
+                    setText(String.format("%.2f Mbit/s", bitsPerSecond.doubleValue() / 1_000_000));
+                }
+                setStyle("-fx-alignment: CENTER-RIGHT;");
+            }
+        });
+
+        table.getColumns().addAll(name, date, status, progress, size, duration, bitrate);
+        sortFields.put(name, RecordingQuery.SortField.MODEL_NAME);
+        sortFields.put(date, RecordingQuery.SortField.START_DATE);
+        sortFields.put(status, RecordingQuery.SortField.STATUS);
+        sortFields.put(size, RecordingQuery.SortField.SIZE);
+        sortFields.put(duration, RecordingQuery.SortField.DURATION);
+        sortFields.put(bitrate, RecordingQuery.SortField.BITRATE);
         table.setItems(observableRecordings);
         table.addEventHandler(ContextMenuEvent.CONTEXT_MENU_REQUESTED, event -> {
             List<JavaFxRecording> recordings = table.getSelectionModel().getSelectedItems();
@@ -223,8 +281,30 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
                 }
             }
         });
+        table.setOnSort(event -> reload());
         scrollPane.setContent(table);
 
+        filter = new TextField();
+        filter.setPromptText("Filter");
+        filter.textProperty().addListener((observable, oldValue, newValue) -> {
+            page = 0;
+            reload();
+        });
+        previousPage = new Button("<");
+        previousPage.setOnAction(e -> {
+            page = Math.max(0, page - 1);
+            reload();
+        });
+        nextPage = new Button(">");
+        nextPage.setOnAction(e -> {
+            page++;
+            reload();
+        });
+        pageLabel = new Label();
+        HBox.setMargin(pageLabel, new Insets(4, 0, 0, 0));
+        HBox pagingBox = new HBox(5, filter, previousPage, pageLabel, nextPage);
+        BorderPane.setMargin(pagingBox, new Insets(5));
+
         HBox spaceBox = new HBox(5);
         Label l = new Label("Space left on device");
         HBox.setMargin(l, new Insets(2, 0, 0, 0));
@@ -241,6 +321,7 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         root.setPadding(new Insets(5));
         root.setTop(spaceBox);
         root.setCenter(scrollPane);
+        root.setBottom(pagingBox);
         setContent(root);
 
         restoreState();
@@ -252,6 +333,7 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         updateService.setOnSucceeded((event) -> {
             updateRecordingsTable();
             updateFreeSpaceDisplay();
+            updatePaging();
         });
         updateService.setOnFailed((event) -> {
             LOG.info("Couldn't get list of recordings from recorder", event.getSource().getException());
@@ -263,6 +345,43 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         });
     }
 
+    private void updatePaging() {
+        int first = total == 0 ? 0 : page * PAGE_SIZE + 1;
+        int last = Math.min(total, (page + 1) * PAGE_SIZE);
+        pageLabel.setText(first + " - " + last + " of " + total);
+        previousPage.setDisable(page == 0);
+        nextPage.setDisable(last >= total);
+    }
+
+    /**
+     * Fetches the recordings again, e.g. because the page or the sort order has changed
+     */
+    private void reload() {
+        if (updateService != null && isSelected()) {
+            updateService.restart();
+        }
+    }
+
+    /**
+     * Creates the query for the current page. The recorder sorts and pages the recordings, so that we
+     * only have to fetch the recordings, which are displayed.
+     */
+    private RecordingQuery createQuery() {
+        RecordingQuery query = new RecordingQuery();
+        query.modelName = filter.getText();
+        query.offset = page * PAGE_SIZE;
+        query.limit = PAGE_SIZE;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<JavaFxRecording, ?> col = table.getSortOrder().get(0);
+            RecordingQuery.SortField sortBy = sortFields.get(col);
+            if (sortBy != null) {
+                query.sortBy = sortBy;
+                query.ascending = col.getSortType() == SortType.ASCENDING;
+            }
+        }
+        return query;
+    }
+
     private void updateFreeSpaceDisplay() {
         if(spaceTotal != -1 && spaceFree != -1) {
             double free = ((double)spaceFree) / spaceTotal;
@@ -312,13 +431,17 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         ScheduledService<List<JavaFxRecording>>  updateService = new ScheduledService<List<JavaFxRecording>>() {
             @Override
             protected Task<List<JavaFxRecording>> createTask() {
+                // createTask is called on the FX thread, so we can access the table here
+                RecordingQuery query = createQuery();
                 return new Task<List<JavaFxRecording>>() {
                     @Override
                     public List<JavaFxRecording> call() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
                         updateSpace();
 
+                        RecordingQuery.Result result = recorder.queryRecordings(query);
+                        total = result.total;
                         List<JavaFxRecording> recordings = new ArrayList<>();
-                        for (Recording rec : recorder.getRecordings()) {
+                        for (Recording rec : result.recordings) {
                             recordings.add(new JavaFxRecording(rec));
                         }
                         return recordings;
@@ -405,9 +528,8 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
 
         MenuItem openDir = new MenuItem("Open directory");
         openDir.setOnAction((e) -> {
-            String recordingsDir = Config.getInstance().getSettings().recordingsDir;
             String path = recordings.get(0).getPath();
-            File tsFile = new File(recordingsDir, path);
+            File tsFile = new StoragePool(Config.getInstance()).resolve(path);
             new Thread(() -> {
                 DesktopIntegration.open(tsFile.getParent());
             }).start();
@@ -416,6 +538,19 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
             contextMenu.getItems().add(openDir);
         }
 
+        MenuItem showContactSheet = new MenuItem("Show contact sheet");
+        if(Config.getInstance().getSettings().localRecording) {
+            // the contact sheet is written by the ThumbnailPostProcessor next to the recording file
+            File tsFile = new StoragePool(Config.getInstance()).resolve(recordings.get(0).getPath());
+            File contactSheet = ThumbnailPostProcessor.getContactSheet(tsFile);
+            showContactSheet.setOnAction((e) -> {
+                showContactSheet(recordings.get(0), contactSheet);
+            });
+            if(contactSheet.exists()) {
+                contextMenu.getItems().add(showContactSheet);
+            }
+        }
+
         MenuItem downloadRecording = new MenuItem("Download");
         downloadRecording.setOnAction((e) -> {
             try {
@@ -432,12 +567,25 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
         if(recordings.size() > 1) {
             openInPlayer.setDisable(true);
             openDir.setDisable(true);
+            showContactSheet.setDisable(true);
             downloadRecording.setDisable(true);
         }
 
         return contextMenu;
     }
 
+    private void showContactSheet(Recording recording, File contactSheet) {
+        ImageView image = new ImageView(new Image(contactSheet.toURI().toString(), true));
+        image.setPreserveRatio(true);
+        ScrollPane scrollPane = new ScrollPane(image);
+        image.fitWidthProperty().bind(scrollPane.widthProperty().subtract(20));
+        Stage stage = new Stage();
+        stage.initOwner(getTabPane().getScene().getWindow());
+        stage.setTitle(recording.getModelName() + " - " + recording.getStartDate().atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)));
+        stage.setScene(new Scene(scrollPane, 1000, 700));
+        stage.show();
+    }
+
     private void download(Recording recording) throws IOException, ParseException, PlaylistException {
         String filename = recording.getPath().replaceAll("/", "-") + ".ts";
         FileChooser chooser = new FileChooser();
@@ -562,20 +710,19 @@ public class RecordingsTab extends Tab implements TabSelectionListener {
                     recordingsLock.lock();
                     try {
                         List<Recording> deleted = new ArrayList<>();
-                        for (Iterator<JavaFxRecording> iterator = recordings.iterator(); iterator.hasNext();) {
-                            JavaFxRecording r =  iterator.next();
-                            if(r.getStatus() != FINISHED) {
-                                continue;
-                            }
-                            try {
-                                recorder.delete(r);
+                        for (JavaFxRecording r : recordings) {
+                            if(r.getStatus() == FINISHED) {
                                 deleted.add(r);
-                            } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e1) {
-                                LOG.error("Error while deleting recording", e1);
-                                showErrorDialog("Error while deleting recording", "Recording not deleted", e1);
                             }
                         }
-                        observableRecordings.removeAll(deleted);
+                        // the recorder deletes them in the background, so this doesn't take long even for many recordings
+                        try {
+                            recorder.delete(deleted);
+                            observableRecordings.removeAll(deleted);
+                        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e1) {
+                            LOG.error("Error while deleting recordings", e1);
+                            showErrorDialog("Error while deleting recordings", "Recordings not deleted", e1);
+                        }
                     } finally {
                         recordingsLock.unlock();
                         Platform.runLater(() -> table.setCursor(Cursor.DEFAULT));
@@ -21,6 +21,7 @@ public abstract class AbstractModel implements Model {
     private List<String> tags = new ArrayList<>();
     private int streamUrlIndex = -1;
     private boolean suspended = false;
+    private int priority = DEFAULT_PRIORITY;
     protected Site site;
     protected State onlineState = State.UNKNOWN;
 
@@ -123,6 +124,16 @@ public abstract class AbstractModel implements Model {
         this.suspended = suspended;
     }
 
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void setPriority(int priority) {
+        this.priority = Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, priority));
+    }
+
     @Override
     public State getOnlineState(boolean failFast) throws IOException, ExecutionException {
         return onlineState;
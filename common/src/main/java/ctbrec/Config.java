@@ -1,17 +1,23 @@
 package ctbrec;
 
+import static java.nio.file.StandardCopyOption.*;
 import static java.nio.file.StandardOpenOption.*;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,12 +33,22 @@ import okio.BufferedSource;
 public class Config {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(Config.class);
+    private static final long SAVE_DELAY_MILLIS = 2000;
 
     private static Config instance;
     private Settings settings;
     private String filename;
     private List<Site> sites;
     private File configDir;
+    private JsonAdapter<Settings> saveAdapter;
+    private volatile boolean dirty = false;
+    private AtomicBoolean saveScheduled = new AtomicBoolean(false);
+    private ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("ConfigWriter");
+        t.setDaemon(true);
+        return t;
+    });
 
     private Config(List<Site> sites) throws FileNotFoundException, IOException {
         this.sites = sites;
@@ -108,16 +124,69 @@ public class Config {
         return settings;
     }
 
-    public void save() throws IOException {
-        Moshi moshi = new Moshi.Builder()
-                .add(Model.class, new ModelJsonAdapter())
-                .build();
-        JsonAdapter<Settings> adapter = moshi.adapter(Settings.class).indent("  ");
-        String json = adapter.toJson(settings);
-        File configFile = new File(configDir, filename);
-        LOG.debug("Saving config to {}", configFile.getAbsolutePath());
-        Files.createDirectories(configDir.toPath());
-        Files.write(configFile.toPath(), json.getBytes("utf-8"), CREATE, WRITE, TRUNCATE_EXISTING);
+    /**
+     * Writes the settings to the config file. The settings are written to a temporary file first, which then replaces
+     * the config file, so that a crash while saving can't leave a broken config file behind.
+     */
+    public synchronized void save() throws IOException {
+        // cleared before serializing, so that changes during the save mark the settings as dirty again
+        dirty = false;
+        try {
+            String json = toJson();
+            File configFile = new File(configDir, filename);
+            File tmpFile = new File(configDir, filename + ".tmp");
+            LOG.debug("Saving config to {}", configFile.getAbsolutePath());
+            Files.createDirectories(configDir.toPath());
+            Files.write(tmpFile.toPath(), json.getBytes("utf-8"), CREATE, WRITE, TRUNCATE_EXISTING);
+            try {
+                Files.move(tmpFile.toPath(), configFile.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), configFile.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+
+    private String toJson() throws IOException {
+        if (saveAdapter == null) {
+            Moshi moshi = new Moshi.Builder()
+                    .add(Model.class, new ModelJsonAdapter())
+                    .build();
+            saveAdapter = moshi.adapter(Settings.class).indent("  ");
+        }
+        // the model list is changed by the ModelRegistry of the recorder, which locks the list while doing so
+        synchronized (settings.models) {
+            return saveAdapter.toJson(settings);
+        }
+    }
+
+    /**
+     * Marks the settings as changed. They are saved by a background thread after a short delay, so that
+     * many changes in a row (e.g. adding a lot of models) result in only one write.
+     */
+    public void markDirty() {
+        dirty = true;
+        if (saveScheduled.compareAndSet(false, true)) {
+            writer.schedule(() -> {
+                saveScheduled.set(false);
+                try {
+                    flush();
+                } catch (IOException e) {
+                    LOG.error("Couldn't save config", e);
+                }
+            }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the settings right away, if they have been marked as changed
+     */
+    public void flush() throws IOException {
+        if (dirty) {
+            save();
+        }
     }
 
     public static boolean isServerMode() {
@@ -128,30 +197,41 @@ public class Config {
         return Objects.equals(System.getenv("CTBREC_DEV"), "1");
     }
 
+    public List<Site> getSites() {
+        return sites;
+    }
+
     public File getConfigDir() {
         return configDir;
     }
 
     public File getFileForRecording(Model model) {
-        File dirForRecording = getDirForRecording(model);
+        return getFileForRecording(model, new File(getSettings().recordingsDir));
+    }
+
+    /**
+     * @param recordingsDir the directory of the storage pool, which the recording is saved to
+     */
+    public File getFileForRecording(Model model, File recordingsDir) {
+        File dirForRecording = getDirForRecording(model, recordingsDir);
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm");
         String startTime = sdf.format(new Date());
         File targetFile = new File(dirForRecording, model.getName() + '_' + startTime + ".ts");
         return targetFile;
     }
 
-    private File getDirForRecording(Model model) {
+    private File getDirForRecording(Model model, File recordingsDir) {
         switch(getSettings().recordingsDirStructure) {
         case ONE_PER_MODEL:
-            return new File(getSettings().recordingsDir, model.getName());
+            return new File(recordingsDir, model.getName());
         case ONE_PER_RECORDING:
-            File modelDir = new File(getSettings().recordingsDir, model.getName());
+            File modelDir = new File(recordingsDir, model.getName());
             SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm");
             String startTime = sdf.format(new Date());
             return new File(modelDir, startTime);
         case FLAT:
         default:
-            return new File(getSettings().recordingsDir);
+            return recordingsDir;
         }
     }
 }
@@ -14,6 +14,10 @@ import ctbrec.sites.Site;
 
 public interface Model extends Comparable<Model> {
 
+    public static final int MIN_PRIORITY = 0;
+    public static final int DEFAULT_PRIORITY = 50;
+    public static final int MAX_PRIORITY = 100;
+
     public static enum State {
         ONLINE("online"),
         OFFLINE("offline"),
@@ -101,6 +105,14 @@ public interface Model extends Comparable<Model> {
 
     public void setSuspended(boolean suspended);
 
+    /**
+     * The priority of the recording of this model (0 - 100). If {@link Settings#concurrentRecordings} is reached,
+     * recordings with a lower priority are stopped in favor of models with a higher priority.
+     */
+    public int getPriority();
+
+    public void setPriority(int priority);
+
 
 
 }
\ No newline at end of file
@@ -7,12 +7,14 @@ import java.util.Date;
 
 public class Recording {
     private String modelName;
+    private String siteName;
     private Instant startDate;
     private String path;
     private boolean hasPlaylist;
     private State status = State.UNKNOWN;
     private int progress = -1;
     private long sizeInByte;
+    private double durationInSeconds;
 
     public static enum State {
         RECORDING("recording"),
@@ -37,6 +39,18 @@ public class Recording {
 
     public Recording() {}
 
+    public Recording(Recording other) {
+        modelName = other.modelName;
+        siteName = other.siteName;
+        startDate = other.startDate;
+        path = other.path;
+        hasPlaylist = other.hasPlaylist;
+        status = other.status;
+        progress = other.progress;
+        sizeInByte = other.sizeInByte;
+        durationInSeconds = other.durationInSeconds;
+    }
+
     public Recording(String path) throws ParseException {
         this.path = path;
         this.modelName = path.substring(0, path.indexOf("/"));
@@ -53,6 +67,14 @@ public class Recording {
         this.modelName = modelName;
     }
 
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public void setSiteName(String siteName) {
+        this.siteName = siteName;
+    }
+
     public Instant getStartDate() {
         return startDate;
     }
@@ -101,6 +123,21 @@ public class Recording {
         this.sizeInByte = sizeInByte;
     }
 
+    public double getDurationInSeconds() {
+        return durationInSeconds;
+    }
+
+    public void setDurationInSeconds(double durationInSeconds) {
+        this.durationInSeconds = durationInSeconds;
+    }
+
+    /**
+     * @return the average bitrate in bit/s or 0, if the duration is unknown
+     */
+    public long getBitrate() {
+        return getDurationInSeconds() > 0 ? (long) (getSizeInByte() * 8 / getDurationInSeconds()) : 0;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
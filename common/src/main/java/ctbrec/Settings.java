@@ -2,9 +2,11 @@ package ctbrec;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import ctbrec.event.EventHandlerConfiguration;
+import ctbrec.io.RateLimit;
 
 public class Settings {
 
@@ -36,14 +38,43 @@ public class Settings {
     public boolean localRecording = true;
     public int httpPort = 8080;
     public int httpTimeout = 10000;
+    public List<RateLimit> rateLimits = new ArrayList<>(Arrays.asList(
+            new RateLimit("^(www\\.)?chaturbate\\.com/", 2, 4),
+            new RateLimit("^(www\\.)?myfreecams\\.com/", 4, 8),
+            new RateLimit("^(www\\.)?camsoda\\.com/", 4, 8),
+            new RateLimit("^(www\\.)?cam4\\.com/", 4, 8),
+            new RateLimit("^(www\\.)?bongacams\\d*\\.com/", 4, 8),
+            new RateLimit("^(www\\.)?streamate\\.com/", 4, 8),
+            new RateLimit("^sea1c-ls\\.naiadsystems\\.com/.*\\.json$", 4, 8),
+            new RateLimit("^hybridclient\\.naiadsystems\\.com/", 4, 8)));
     public String httpUserAgent = "Mozilla/5.0 Gecko/20100101 Firefox/62.0";
     public String httpServer = "localhost";
     public String recordingsDir = System.getProperty("user.home") + File.separator + "ctbrec";
+    public List<String> additionalRecordingsDirs = new ArrayList<>();
     public DirectoryStructure recordingsDirStructure = DirectoryStructure.FLAT;
     public long minimumSpaceLeftInBytes = 0;
     public int minimumLengthInSeconds = 0;
     public String mediaPlayer = "/usr/bin/mpv";
     public String postProcessing = "";
+    public List<String> streamingPostProcessors = new ArrayList<>();
+    public boolean concatenateSegments = false;
+    public boolean packSegments = false;
+    public int postProcessingThreads = 2;
+    public int reconnectGracePeriodInSecs = 0;
+    public int thumbnailIntervalInSecs = 60;
+    public int segmentDownloadThreads = 20;
+    public boolean useVirtualThreads = false;
+    public int concurrentRecordings = 0;
+    public int bandwidthLimitInKbitPerSec = 0;
+    public int shutdownTimeoutInSecs = 30;
+    public int retentionMaxAgeInDays = 0;
+    public long retentionMaxBytesPerModel = 0;
+    public boolean retentionOldestFirst = false;
+    public String retentionArchiveDir = "";
+    public int retentionLeadTimeInSecs = 3600;
+    public boolean writeCoalescing = false;
+    public int writeCoalescingChunkSizeInKB = 1024;
+    public int writeCoalescingSyncIntervalInSecs = 0;
     public String username = ""; // chaturbate username TODO maybe rename this onetime
     public String password = ""; // chaturbate password TODO maybe rename this onetime
     public String chaturbateBaseUrl = "https://chaturbate.com";
@@ -92,6 +123,8 @@ public class Settings {
     public String colorBase = "#FFFFFF";
     public String colorAccent = "#FFFFFF";
     public int onlineCheckIntervalInSecs = 60;
+    public int onlineCheckMaxIntervalInSecs = 900;
+    public int onlineCheckMaxRequestsPerMinute = 120;
     public String recordedModelsSortColumn = "";
     public String recordedModelsSortType = "";
     public double[] recordedModelsColumnWidths = new double[0];
@@ -0,0 +1,74 @@
+package ctbrec.event;
+
+import java.io.File;
+
+public class DeletionProgressEvent extends Event {
+
+    private File path;
+    private boolean deleted;
+    private int done;
+    private int total;
+
+    public DeletionProgressEvent(File path, boolean deleted, int done, int total) {
+        this.path = path;
+        this.deleted = deleted;
+        this.done = done;
+        this.total = total;
+    }
+
+    @Override
+    public Type getType() {
+        return Event.Type.DELETION_PROGRESS;
+    }
+
+    @Override
+    public String getName() {
+        return "Deletion progress";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Fired for each recording of a deletion request, when it has been deleted or couldn't be deleted";
+    }
+
+    @Override
+    public String[] getExecutionParams() {
+        return new String[] {
+                getType().name(),
+                path.getAbsolutePath(),
+                Boolean.toString(deleted),
+                Integer.toString(done),
+                Integer.toString(total)
+        };
+    }
+
+    public File getPath() {
+        return path;
+    }
+
+    /**
+     * @return false, if the recording couldn't be deleted completely
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the number of recordings of the request, which have been processed so far
+     */
+    public int getDone() {
+        return done;
+    }
+
+    /**
+     * @return the number of recordings of the request
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "DeletionProgress[" + done + "/" + total + "," + path + "," + deleted + "]";
+    }
+}
@@ -18,7 +18,12 @@ public abstract class Event {
         /**
          * This event is fired whenever the state of a recording changes.
          */
-        RECORDING_STATUS_CHANGED("recording status changed");
+        RECORDING_STATUS_CHANGED("recording status changed"),
+
+        /**
+         * This event is fired for each recording of a deletion request, when it has been deleted.
+         */
+        DELETION_PROGRESS("deletion progress");
 
         private String desc;
 
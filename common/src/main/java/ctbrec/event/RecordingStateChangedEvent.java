@@ -51,6 +51,14 @@ public class RecordingStateChangedEvent extends AbstractModelEvent {
         return newState;
     }
 
+    public File getPath() {
+        return path;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
     @Override
     public String toString() {
         return "RecordingStateChanged[" + newState.name() + "," + model.getDisplayName() + "," + path + "]";
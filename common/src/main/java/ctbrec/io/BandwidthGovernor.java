@@ -0,0 +1,111 @@
+package ctbrec.io;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import ctbrec.Config;
+
+/**
+ * Limits the bandwidth, which is used by all recordings together, to {@link ctbrec.Settings#bandwidthLimitInKbitPerSec}.
+ * <p>
+ * Each recording gets a {@link Share} of the limit, which is proportional to its weight. Only shares, which have been
+ * used recently, count, so the bandwidth of idle recordings is distributed among the others. Each share is a
+ * token bucket, which is allowed to go into debt, so that a read of any size can pass and the following reads wait
+ * until the debt is paid off.
+ */
+public class BandwidthGovernor {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    private static final BandwidthGovernor INSTANCE = new BandwidthGovernor();
+
+    private Set<Share> shares = ConcurrentHashMap.newKeySet();
+
+    private BandwidthGovernor() {}
+
+    public static BandwidthGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param weight the weight of the share, e.g. the priority of the model
+     * @return a new share, which has to be closed, when the recording is finished
+     */
+    public Share register(int weight) {
+        Share share = new Share(Math.max(1, weight));
+        shares.add(share);
+        return share;
+    }
+
+    /**
+     * @return the limit in bytes per second or 0, if the bandwidth is not limited
+     */
+    private long getLimit() {
+        return Config.getInstance().getSettings().bandwidthLimitInKbitPerSec * 1000L / 8;
+    }
+
+    private long getRate(Share share) {
+        long limit = getLimit();
+        if (limit <= 0) {
+            return Long.MAX_VALUE;
+        }
+        long now = System.nanoTime();
+        long activeWeight = share.weight;
+        for (Share other : shares) {
+            if (other != share && now - other.lastActivity < IDLE_TIMEOUT) {
+                activeWeight += other.weight;
+            }
+        }
+        return Math.max(1, limit * share.weight / activeWeight);
+    }
+
+    /**
+     * The part of the bandwidth, which is available to one recording
+     */
+    public class Share implements AutoCloseable {
+        private final int weight;
+        private volatile long lastActivity = System.nanoTime();
+        private double tokens = 0;
+        private long lastRefill = System.nanoTime();
+
+        private Share(int weight) {
+            this.weight = weight;
+        }
+
+        /**
+         * Takes the given number of bytes from the bucket and waits, if the bucket is in debt.
+         */
+        public void acquire(int bytes) throws InterruptedException {
+            long rate = BandwidthGovernor.this.getRate(this);
+            if (rate == Long.MAX_VALUE) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                lastActivity = now;
+                // refill, but don't save up more than one second of bandwidth
+                tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+                lastRefill = now;
+                tokens -= bytes;
+                waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        /**
+         * @return the bandwidth, which is currently available to this share, in bytes per second
+         * or {@link Long#MAX_VALUE}, if the bandwidth is not limited
+         */
+        public long getRate() {
+            return BandwidthGovernor.this.getRate(this);
+        }
+
+        @Override
+        public void close() {
+            shares.remove(this);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package ctbrec.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Config;
+import ctbrec.Settings;
+
+/**
+ * Writes the files of all recordings on one volume from a single thread.
+ * <p>
+ * Many recordings, which write small pieces to their own files at the same time, cause a lot of random I/O on
+ * spinning disks. The channels returned by {@link #open(FileChannel, File)} collect the data in chunks of
+ * {@link Settings#writeCoalescingChunkSizeInKB} and hand the full chunks to the writer thread of the volume.
+ * The writer thread writes all chunks of one file in one go, before it continues with the next file. If
+ * {@link Settings#writeCoalescingSyncIntervalInSecs} is set, all files written in the interval are synced together.
+ */
+public class CoalescingWriter {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(CoalescingWriter.class);
+    private static final CoalescingWriter INSTANCE = new CoalescingWriter();
+    private static final int QUEUE_SIZE = 64;
+
+    private Map<String, VolumeThread> volumeThreads = new ConcurrentHashMap<>();
+
+    private CoalescingWriter() {}
+
+    public static CoalescingWriter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true, if the writes of the recordings should go through the writer threads
+     */
+    public static boolean isEnabled() {
+        return Config.getInstance().getSettings().writeCoalescing;
+    }
+
+    /**
+     * Wraps the given channel, so that the writes are done by the writer thread of the volume.
+     * Closing the returned channel blocks, until all data has been written and the file is closed.
+     * @param channel the file to write to
+     * @param volume the volume, which contains the file
+     */
+    public WritableByteChannel open(FileChannel channel, File volume) {
+        VolumeThread thread = volumeThreads.computeIfAbsent(volume.getAbsolutePath(), path -> {
+            VolumeThread t = new VolumeThread(volume);
+            t.start();
+            return t;
+        });
+        int chunkSize = Math.max(4, Config.getInstance().getSettings().writeCoalescingChunkSizeInKB) * 1024;
+        return new CoalescingChannel(channel, thread, chunkSize);
+    }
+
+    private static class Chunk {
+        private CoalescingChannel target;
+        private ByteBuffer data;
+        private boolean close;
+
+        Chunk(CoalescingChannel target, ByteBuffer data, boolean close) {
+            this.target = target;
+            this.data = data;
+            this.close = close;
+        }
+    }
+
+    private static class CoalescingChannel implements WritableByteChannel {
+        private FileChannel channel;
+        private VolumeThread thread;
+        private int chunkSize;
+        private ByteBuffer buffer;
+        private volatile IOException error;
+        private CompletableFuture<Void> closed = new CompletableFuture<>();
+        private boolean open = true;
+
+        CoalescingChannel(FileChannel channel, VolumeThread thread, int chunkSize) {
+            this.channel = channel;
+            this.thread = thread;
+            this.chunkSize = chunkSize;
+            buffer = ByteBuffer.allocate(chunkSize);
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            checkError();
+            int length = src.remaining();
+            while (src.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    submit(false);
+                }
+                int n = Math.min(src.remaining(), buffer.remaining());
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + n);
+                buffer.put(slice);
+                src.position(src.position() + n);
+            }
+            return length;
+        }
+
+        private void submit(boolean close) throws IOException {
+            buffer.flip();
+            thread.enqueue(new Chunk(this, buffer, close));
+            buffer = close ? null : ByteBuffer.allocate(chunkSize);
+        }
+
+        private void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!open) {
+                return;
+            }
+            open = false;
+            submit(true);
+            try {
+                closed.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the file to be written");
+            } catch (ExecutionException e) {
+                // can't happen, the future is only completed normally
+            }
+            checkError();
+        }
+    }
+
+    private static class VolumeThread extends Thread {
+        private BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private Set<CoalescingChannel> unsynced = new LinkedHashSet<>();
+        private long lastSync = System.currentTimeMillis();
+
+        VolumeThread(File volume) {
+            setName("VolumeWriter " + volume.getAbsolutePath());
+            setDaemon(true);
+        }
+
+        void enqueue(Chunk chunk) throws IOException {
+            try {
+                // blocks, if the disk can't keep up, so that we don't pile up the recordings in memory
+                queue.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the volume writer");
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Chunk> chunks = new ArrayList<>();
+            while (true) {
+                try {
+                    Chunk first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first != null) {
+                        chunks.add(first);
+                        queue.drainTo(chunks);
+                        writeChunks(chunks);
+                        chunks.clear();
+                    }
+                    syncIfDue();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    LOG.error("Unexpected error in volume writer", e);
+                }
+            }
+        }
+
+        private void writeChunks(List<Chunk> chunks) {
+            // group the chunks by file, so that each file is written sequentially
+            Map<CoalescingChannel, List<Chunk>> byFile = new LinkedHashMap<>();
+            for (Chunk chunk : chunks) {
+                byFile.computeIfAbsent(chunk.target, c -> new ArrayList<>()).add(chunk);
+            }
+            for (Map.Entry<CoalescingChannel, List<Chunk>> entry : byFile.entrySet()) {
+                CoalescingChannel target = entry.getKey();
+                boolean close = false;
+                ByteBuffer[] buffers = new ByteBuffer[entry.getValue().size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    Chunk chunk = entry.getValue().get(i);
+                    buffers[i] = chunk.data;
+                    close |= chunk.close;
+                }
+                write(target, buffers);
+                if (close) {
+                    close(target);
+                }
+            }
+        }
+
+        private void write(CoalescingChannel target, ByteBuffer[] buffers) {
+            if (target.error != null) {
+                return;
+            }
+            try {
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= target.channel.write(buffers);
+                }
+                unsynced.add(target);
+            } catch (IOException e) {
+                target.error = e;
+            }
+        }
+
+        private void close(CoalescingChannel target) {
+            try {
+                if (getSyncInterval() > 0 && target.error == null) {
+                    target.channel.force(false);
+                }
+                target.channel.close();
+            } catch (IOException e) {
+                if (target.error == null) {
+                    target.error = e;
+                }
+            } finally {
+                unsynced.remove(target);
+                target.closed.complete(null);
+            }
+        }
+
+        private void syncIfDue() {
+            long interval = getSyncInterval();
+            long now = System.currentTimeMillis();
+            if (interval <= 0 || now - lastSync < interval) {
+                return;
+            }
+            for (CoalescingChannel target : unsynced) {
+                try {
+                    target.channel.force(false);
+                } catch (IOException e) {
+                    LOG.warn("Couldn't sync recording file", e);
+                }
+            }
+            unsynced.clear();
+            lastSync = now;
+        }
+
+        private long getSyncInterval() {
+            return TimeUnit.SECONDS.toMillis(Config.getInstance().getSettings().writeCoalescingSyncIntervalInSecs);
+        }
+    }
+}
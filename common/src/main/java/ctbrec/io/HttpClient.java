@@ -119,7 +119,8 @@ public abstract class HttpClient {
                 .cookieJar(cookieJar)
                 .connectTimeout(Config.getInstance().getSettings().httpTimeout, TimeUnit.MILLISECONDS)
                 .readTimeout(Config.getInstance().getSettings().httpTimeout, TimeUnit.MILLISECONDS)
-                .connectionPool(new ConnectionPool(50, 10, TimeUnit.MINUTES));
+                .connectionPool(new ConnectionPool(50, 10, TimeUnit.MINUTES))
+                .addInterceptor(RequestRateLimiter.getInstance());
         //.addInterceptor(new LoggingInterceptor());
 
         ProxyType proxyType = Config.getInstance().getSettings().proxyType;
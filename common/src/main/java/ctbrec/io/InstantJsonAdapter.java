@@ -10,12 +10,19 @@ import com.squareup.moshi.JsonWriter;
 public class InstantJsonAdapter extends JsonAdapter<Instant> {
     @Override
     public Instant fromJson(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
         long timeInEpochMillis = reader.nextLong();
         return Instant.ofEpochMilli(timeInEpochMillis);
     }
 
     @Override
     public void toJson(JsonWriter writer, Instant time) throws IOException {
-        writer.value(time.toEpochMilli());
+        if (time == null) {
+            writer.nullValue();
+        } else {
+            writer.value(time.toEpochMilli());
+        }
     }
 }
@@ -65,6 +65,8 @@ public class ModelJsonAdapter extends JsonAdapter<Model> {
                     } else if(key.equals("suspended")) {
                         suspended = reader.nextBoolean();
                         model.setSuspended(suspended);
+                    } else if(key.equals("priority")) {
+                        model.setPriority(reader.nextInt());
                     } else if(key.equals("siteSpecific")) {
                         reader.beginObject();
                         try {
@@ -103,6 +105,7 @@ public class ModelJsonAdapter extends JsonAdapter<Model> {
         writeValueIfSet(writer, "url", model.getUrl());
         writer.name("streamUrlIndex").value(model.getStreamUrlIndex());
         writer.name("suspended").value(model.isSuspended());
+        writer.name("priority").value(model.getPriority());
         writer.name("siteSpecific");
         writer.beginObject();
         model.writeSiteSpecificData(writer);
@@ -0,0 +1,27 @@
+package ctbrec.io;
+
+/**
+ * A limit for the requests to the URLs, which match a pattern, see {@link RequestRateLimiter}
+ */
+public class RateLimit {
+
+    /** regular expression, which is searched in host and path of the URL, e.g. <code>^(www\.)?chaturbate\.com/</code> */
+    public String pattern;
+    /** the sustained number of requests per second for each host */
+    public double requestsPerSecond;
+    /** the number of requests, which may be sent at once after a pause */
+    public int burst;
+
+    public RateLimit() {}
+
+    public RateLimit(String pattern, double requestsPerSecond, int burst) {
+        this.pattern = pattern;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+    }
+
+    @Override
+    public String toString() {
+        return pattern + " " + requestsPerSecond + "/s burst " + burst;
+    }
+}
@@ -0,0 +1,180 @@
+package ctbrec.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Config;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Limits the requests of all {@link HttpClient}s to the sites according to {@link ctbrec.Settings#rateLimits}.
+ * <p>
+ * The first {@link RateLimit}, whose pattern is found in host and path of a URL, applies to the request. Each pair of
+ * rule and host has a token bucket, which is shared by all threads and clients. The bucket holds up to
+ * {@link RateLimit#burst} requests and may go into debt, so that concurrent requests wait one after the other.
+ * URLs, which don't match any rule, e.g. the segments of the streams, are not limited.
+ * If a server answers with 429 Too Many Requests, the bucket waits for the Retry-After time.
+ */
+public class RequestRateLimiter implements Interceptor {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RequestRateLimiter.class);
+    private static final RequestRateLimiter INSTANCE = new RequestRateLimiter();
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER_SECS = 10;
+
+    private Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    /** the compiled rules are replaced, when the settings get a new list of rate limits */
+    private volatile Rules rules = new Rules(null, new ArrayList<>());
+
+    private RequestRateLimiter() {}
+
+    public static RequestRateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        Bucket bucket = getBucket(url);
+        if (bucket == null) {
+            return chain.proceed(chain.request());
+        }
+
+        try {
+            bucket.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit of " + url.host());
+        }
+        Response response = chain.proceed(chain.request());
+        if (response.code() == TOO_MANY_REQUESTS) {
+            long retryAfter = parseRetryAfter(response.header("Retry-After"));
+            LOG.debug("{} answered with 429. Pausing requests for {} seconds", url.host(), retryAfter);
+            bucket.pause(TimeUnit.SECONDS.toNanos(retryAfter));
+        }
+        return response;
+    }
+
+    private Bucket getBucket(HttpUrl url) {
+        String hostAndPath = url.host() + url.encodedPath();
+        for (Rule rule : getRules()) {
+            if (rule.pattern.matcher(hostAndPath).find()) {
+                return buckets.computeIfAbsent(rule.limit.pattern + '@' + url.host(), k -> new Bucket(rule.limit));
+            }
+        }
+        return null;
+    }
+
+    private List<Rule> getRules() {
+        List<RateLimit> limits = Config.getInstance().getSettings().rateLimits;
+        Rules current = rules;
+        if (current.configured != limits) {
+            current = compile(limits);
+        }
+        return current.rules;
+    }
+
+    private synchronized Rules compile(List<RateLimit> limits) {
+        if (rules.configured != limits) {
+            List<Rule> compiled = new ArrayList<>();
+            if (limits != null) {
+                for (RateLimit limit : limits) {
+                    if (limit.requestsPerSecond <= 0) {
+                        continue;
+                    }
+                    try {
+                        compiled.add(new Rule(Pattern.compile(limit.pattern), limit));
+                    } catch (PatternSyntaxException | NullPointerException e) {
+                        LOG.error("Ignoring rate limit with invalid pattern {}", limit.pattern);
+                    }
+                }
+            }
+            buckets.clear();
+            rules = new Rules(limits, compiled);
+            LOG.debug("Rate limits: {}", limits);
+        }
+        return rules;
+    }
+
+    private long parseRetryAfter(String header) {
+        if (header != null) {
+            try {
+                return Math.max(1, Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // an HTTP date, use the default
+            }
+        }
+        return DEFAULT_RETRY_AFTER_SECS;
+    }
+
+    private static class Rules {
+        private final List<RateLimit> configured;
+        private final List<Rule> rules;
+
+        private Rules(List<RateLimit> configured, List<Rule> rules) {
+            this.configured = configured;
+            this.rules = rules;
+        }
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final RateLimit limit;
+
+        private Rule(Pattern pattern, RateLimit limit) {
+            this.pattern = pattern;
+            this.limit = limit;
+        }
+    }
+
+    static class Bucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        Bucket(RateLimit limit) {
+            rate = limit.requestsPerSecond;
+            capacity = Math.max(1, limit.burst);
+            tokens = capacity;
+        }
+
+        void acquire() throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                tokens -= 1;
+                waitNanos = tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        /**
+         * Puts the bucket into debt, so that the next request waits for the given time
+         */
+        synchronized void pause(long nanos) {
+            refill();
+            tokens = Math.min(tokens, -nanos * rate / 1e9);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+        }
+    }
+}
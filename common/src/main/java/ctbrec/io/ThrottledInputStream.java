@@ -0,0 +1,46 @@
+package ctbrec.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * An InputStream, which doesn't read faster than the given {@link BandwidthGovernor.Share} allows
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+    private BandwidthGovernor.Share share;
+
+    public ThrottledInputStream(InputStream in, BandwidthGovernor.Share share) {
+        super(in);
+        this.share = share;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            throttle(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int length = super.read(b, off, len);
+        if (length > 0) {
+            throttle(length);
+        }
+        return length;
+    }
+
+    private void throttle(int bytes) throws InterruptedIOException {
+        try {
+            share.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ctbrec.recorder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A versioned log of the changes of the recorder state, so that a client only has to fetch the changes since
+ * its last sync instead of the whole state.
+ * <p>
+ * The state is published as a map of key to value for each type, e.g. the recordings by path. The values are the
+ * JSON values (maps, lists, strings, numbers) of the objects. Each publication is compared with the previous one and
+ * every insert, update and delete gets a new version. Only the last {@link #MAX_CHANGES} changes are kept. A client,
+ * which is further behind, gets the whole state. The versions are only valid for one instance of the log, so each
+ * instance has an id, which the client has to send along with its version.
+ */
+public class ChangeLog {
+
+    public static final int MAX_CHANGES = 10000;
+
+    public static final String INSERT = "INSERT";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+
+    private String id = UUID.randomUUID().toString();
+    private long version = 0;
+    private Map<String, Map<String, Object>> state = new HashMap<>();
+    private Deque<Change> changes = new ArrayDeque<>();
+
+    /**
+     * Compares the current state of one type with the previous state and records the differences
+     * @param type the type of the values, e.g. "recording"
+     * @param current the current state by key
+     */
+    public synchronized void publish(String type, Map<String, Object> current) {
+        Map<String, Object> previous = state.computeIfAbsent(type, t -> new HashMap<>());
+        for (Iterator<Map.Entry<String, Object>> iterator = previous.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Object> entry = iterator.next();
+            if (!current.containsKey(entry.getKey())) {
+                iterator.remove();
+                add(new Change(++version, type, DELETE, entry.getKey(), null));
+            }
+        }
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            boolean known = previous.containsKey(entry.getKey());
+            Object old = previous.put(entry.getKey(), entry.getValue());
+            if (!known) {
+                add(new Change(++version, type, INSERT, entry.getKey(), entry.getValue()));
+            } else if (!Objects.equals(old, entry.getValue())) {
+                add(new Change(++version, type, UPDATE, entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private void add(Change change) {
+        changes.addLast(change);
+        while (changes.size() > MAX_CHANGES) {
+            changes.removeFirst();
+        }
+    }
+
+    /**
+     * @param id the id of the log, which the client has seen last or null
+     * @param since the version, which the client has seen last. 0, if the client doesn't have any state yet
+     * @return the changes after the given version or the whole state, if the changes are not available anymore
+     */
+    public synchronized ChangeSet getChangesSince(String id, long since) {
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.id = this.id;
+        changeSet.version = version;
+        changeSet.changes = new ArrayList<>();
+        long oldest = changes.isEmpty() ? version + 1 : changes.peekFirst().version;
+        if (!this.id.equals(id) || since > version || since < oldest - 1 || since == 0) {
+            // the client is too far behind or has been connected to another instance
+            changeSet.full = true;
+            for (Map.Entry<String, Map<String, Object>> typeState : state.entrySet()) {
+                for (Map.Entry<String, Object> entry : typeState.getValue().entrySet()) {
+                    changeSet.changes.add(new Change(version, typeState.getKey(), INSERT, entry.getKey(), entry.getValue()));
+                }
+            }
+            return changeSet;
+        }
+        Iterator<Change> iterator = changes.descendingIterator();
+        List<Change> newer = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Change change = iterator.next();
+            if (change.version <= since) {
+                break;
+            }
+            newer.add(change);
+        }
+        for (int i = newer.size() - 1; i >= 0; i--) {
+            changeSet.changes.add(newer.get(i));
+        }
+        return changeSet;
+    }
+
+    public static class Change {
+        public long version;
+        public String type;
+        public String op;
+        public String key;
+        public Object value;
+
+        public Change() {}
+
+        public Change(long version, String type, String op, String key, Object value) {
+            this.version = version;
+            this.type = type;
+            this.op = op;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    public static class ChangeSet {
+        public String id;
+        /** the version of the state after the changes have been applied */
+        public long version;
+        /** true, if the changes contain the whole state and the client has to discard its state */
+        public boolean full;
+        public List<Change> changes;
+    }
+}
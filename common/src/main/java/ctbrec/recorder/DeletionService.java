@@ -0,0 +1,191 @@
+package ctbrec.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.event.DeletionProgressEvent;
+import ctbrec.event.EventBusHolder;
+import ctbrec.recorder.postprocessing.ChecksumPostProcessor;
+import ctbrec.recorder.postprocessing.ThumbnailPostProcessor;
+
+/**
+ * Deletes recordings in the background, so that a request to delete many recordings returns immediately.
+ * <p>
+ * Each volume has its own deletion thread, so the volumes are worked on in parallel, while the disk of one volume
+ * doesn't have to seek between several recordings at once. The recordings are hidden from the listings, as soon as
+ * they are queued, see {@link #isQueued(File)}. For each recording a {@link DeletionProgressEvent} is fired.
+ * A recording can be queued more than once, it stays hidden until the last of these deletions is done.
+ */
+public class DeletionService {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(DeletionService.class);
+
+    private StoragePool storagePool;
+    private Consumer<File> onQueued;
+    private Consumer<File> onDeleted;
+    /** the number of pending deletions of each recording */
+    private Map<File, Integer> queued = new ConcurrentHashMap<>();
+    private Map<File, ExecutorService> volumeThreads = new ConcurrentHashMap<>();
+
+    /**
+     * @param storagePool the volumes, which contain the recordings
+     * @param onQueued called with the path of each recording, after it has been marked as queued
+     * @param onDeleted called with the path of each recording, after it has been deleted or the deletion has failed
+     */
+    public DeletionService(StoragePool storagePool, Consumer<File> onQueued, Consumer<File> onDeleted) {
+        this.storagePool = storagePool;
+        this.onQueued = onQueued;
+        this.onDeleted = onDeleted;
+    }
+
+    /**
+     * Queues the given recordings for deletion
+     * @param paths the directories or files of the recordings
+     */
+    public void delete(Collection<File> paths) {
+        AtomicInteger done = new AtomicInteger();
+        int total = paths.size();
+        for (File path : paths) {
+            addQueued(path);
+            onQueued.accept(path);
+            getVolumeThread(path).submit(() -> {
+                boolean deleted = false;
+                try {
+                    deleteQueued(path);
+                    deleted = true;
+                } catch (Exception e) {
+                    LOG.error("Couldn't delete recording {}", path, e);
+                }
+                EventBusHolder.BUS.post(new DeletionProgressEvent(path, deleted, done.incrementAndGet(), total));
+            });
+        }
+        LOG.debug("Queued {} recordings for deletion", total);
+    }
+
+    /**
+     * Deletes the given recording in the calling thread
+     * @param path the directory or file of the recording
+     */
+    public void deleteNow(File path) throws IOException {
+        addQueued(path);
+        deleteQueued(path);
+    }
+
+    private void deleteQueued(File path) throws IOException {
+        try {
+            LOG.debug("Deleting {}", path);
+            if (path.isFile()) {
+                Files.delete(path.toPath());
+                deleteSidecars(path);
+                deleteEmptyParents(path.getParentFile());
+            } else {
+                deleteDirectory(path);
+                deleteEmptyParents(path);
+            }
+        } finally {
+            removeQueued(path);
+            onDeleted.accept(path);
+        }
+    }
+
+    /**
+     * @return the files, which are saved next to a recording file: the metadata, the checksum and the contact sheet.
+     * Recording directories contain these files.
+     */
+    static List<File> getSidecars(File recording) {
+        return Arrays.asList(
+                RecordingMetadata.getFile(recording),
+                ChecksumPostProcessor.getChecksumFile(recording),
+                ThumbnailPostProcessor.getContactSheet(recording));
+    }
+
+    /**
+     * Otherwise the parent directories wouldn't be empty
+     */
+    private void deleteSidecars(File recording) throws IOException {
+        for (File sidecar : getSidecars(recording)) {
+            Files.deleteIfExists(sidecar.toPath());
+        }
+    }
+
+    private void addQueued(File path) {
+        queued.merge(path, 1, Integer::sum);
+    }
+
+    private void removeQueued(File path) {
+        queued.computeIfPresent(path, (p, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * @return true, if the given recording is waiting to be deleted or is being deleted
+     */
+    public boolean isQueued(File path) {
+        return queued.containsKey(path);
+    }
+
+    private ExecutorService getVolumeThread(File path) {
+        File volume = storagePool.getVolume(path);
+        File key = volume != null ? volume : path.getParentFile();
+        return volumeThreads.computeIfAbsent(key, v -> Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("Deletion " + v.getAbsolutePath());
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    private void deleteEmptyParents(File parent) throws IOException {
+        while(parent != null && parent.list() != null && parent.list().length == 0) {
+            if(storagePool.isVolume(parent)) {
+                return;
+            }
+            LOG.debug("Deleting empty directory {}", parent.getAbsolutePath());
+            Files.delete(parent.toPath());
+            parent = parent.getParentFile();
+        }
+    }
+
+    private void deleteDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Recording does not exist");
+        }
+
+        boolean deletedAllFiles = true;
+        for (File file : files) {
+            try {
+                LOG.trace("Deleting {}", file.getAbsolutePath());
+                Files.delete(file.toPath());
+            } catch (Exception e) {
+                deletedAllFiles = false;
+                LOG.debug("Couldn't delete {}", file, e);
+            }
+        }
+
+        if (!deletedAllFiles) {
+            throw new IOException("Couldn't delete all files in " + directory);
+        }
+    }
+
+    /**
+     * Stops the deletion threads. Recordings, which haven't been deleted yet, show up again after a restart.
+     */
+    public void shutdown() {
+        for (ExecutorService thread : volumeThreads.values()) {
+            thread.shutdownNow();
+        }
+    }
+}
@@ -6,31 +6,33 @@ import static ctbrec.event.Event.Type.*;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.nio.file.FileStore;
-import java.nio.file.Files;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -60,34 +62,64 @@ import ctbrec.event.RecordingStateChangedEvent;
 import ctbrec.io.HttpClient;
 import ctbrec.io.StreamRedirectThread;
 import ctbrec.recorder.PlaylistGenerator.InvalidPlaylistException;
+import ctbrec.recorder.PostProcessingBacklog.Job;
 import ctbrec.recorder.download.Download;
 import ctbrec.recorder.download.HlsDownload;
 import ctbrec.recorder.download.MergedHlsDownload;
+import ctbrec.recorder.postprocessing.SegmentConcatenator;
 
 public class LocalRecorder implements Recorder {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(LocalRecorder.class);
     private static final boolean IGNORE_CACHE = true;
-    private static final String DATE_FORMAT = "yyyy-MM-dd_HH-mm";
+    private static final long MIN_RESTART_INTERVAL = TimeUnit.SECONDS.toMillis(10);
 
-    private List<Model> models = Collections.synchronizedList(new ArrayList<>());
+    private ModelRegistry models;
     private Map<Model, Download> recordingProcesses = Collections.synchronizedMap(new HashMap<>());
-    private Map<File, PlaylistGenerator> playlistGenerators = new HashMap<>();
+    private Map<Model, InterruptedDownload> interruptedDownloads = Collections.synchronizedMap(new HashMap<>());
+    private Set<Model> waitingModels = ConcurrentHashMap.newKeySet();
+    private Set<Download> pendingPostProcessing = ConcurrentHashMap.newKeySet();
+    private Set<Job> resumedPostProcessing = ConcurrentHashMap.newKeySet();
+    private PostProcessingBacklog backlog;
+    private RecordingJournal journal;
+    private Map<File, PlaylistGenerator> playlistGenerators = new ConcurrentHashMap<>();
     private Config config;
     private ProcessMonitor processMonitor;
     private volatile boolean recording = true;
-    private List<File> deleteInProgress = Collections.synchronizedList(new ArrayList<>());
+    private DeletionService deletionService;
     private RecorderHttpClient client = new RecorderHttpClient();
     private ReentrantLock lock = new ReentrantLock();
     private long lastSpaceMessage = 0;
+    private StoragePool storagePool;
+    private StorageManager storageManager;
+    private RecordingsCatalog catalog;
 
-    private ExecutorService ppThreadPool = Executors.newFixedThreadPool(2);
+    private ExecutorService ppThreadPool;
+    private AtomicInteger ppThreadCounter = new AtomicInteger();
 
     public LocalRecorder(Config config) {
         this.config = config;
+        ppThreadPool = Executors.newFixedThreadPool(Math.max(1, config.getSettings().postProcessingThreads), r -> {
+            Thread t = new Thread(r);
+            t.setName("PostProcessing-" + ppThreadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        backlog = new PostProcessingBacklog(config);
+        if(Config.isServerMode()) {
+            journal = new RecordingJournal(config.getConfigDir());
+        }
+        models = new ModelRegistry(config.getSettings().models);
+        storagePool = new StoragePool(config);
+        storageManager = new StorageManager(config, this, storagePool);
+        // recordings are marked as queued before they are removed from the catalog, so that a scan can't add them
+        // again. a recording is listed again, if it couldn't be deleted completely
+        deletionService = new DeletionService(storagePool, path -> catalog.remove(path), path -> catalog.update(path));
+        catalog = new RecordingsCatalog(config, storagePool, deletionService::isQueued);
+        catalog.start();
         config.getSettings().models.stream().forEach((m) -> {
             if(m.getSite().isEnabled()) {
-                models.add(m);
+                models.load(m);
             } else {
                 LOG.info("{} disabled -> ignoring {}", m.getSite().getName(), m.getName());
             }
@@ -98,13 +130,15 @@ public class LocalRecorder implements Recorder {
         processMonitor.start();
 
         registerEventBusListener();
+        List<Job> leftOver = backlog.load();
         if(Config.isServerMode()) {
-            processUnfinishedRecordings();
+            processUnfinishedRecordings(leftOver);
         }
+        resumePostProcessing(leftOver);
 
         LOG.debug("Recorder initialized");
         LOG.info("Models to record: {}", models);
-        LOG.info("Saving recordings in {}", config.getSettings().recordingsDir);
+        LOG.info("Saving recordings in {}", storagePool.getVolumes());
     }
 
     private void registerEventBusListener() {
@@ -118,6 +152,12 @@ public class LocalRecorder implements Recorder {
                         if(!isSuspended(model) && !recordingProcesses.containsKey(model)) {
                             startRecordingProcess(model);
                         }
+                    } else if (e.getType() == RECORDING_STATUS_CHANGED) {
+                        RecordingStateChangedEvent evt = (RecordingStateChangedEvent) e;
+                        if (evt.getState() == RECORDING && journal != null) {
+                            journal.started(evt.getPath());
+                        }
+                        catalog.update(evt.getPath());
                     }
                 } catch (Exception e1) {
                     LOG.error("Error while handling model state changed event", e);
@@ -128,95 +168,115 @@ public class LocalRecorder implements Recorder {
 
     @Override
     public void startRecording(Model model) {
-        if (!models.contains(model)) {
+        if (models.add(model)) {
             LOG.info("Model {} added", model);
-            lock.lock();
-            try {
-                models.add(model);
-                config.getSettings().models.add(model);
-                config.save();
-            } catch (IOException e) {
-                LOG.error("Couldn't save config", e);
-            } finally {
-                lock.unlock();
-            }
+            config.markDirty();
         }
     }
 
     @Override
     public void stopRecording(Model model) throws IOException {
+        boolean slotFreed = false;
         lock.lock();
         try {
-            if (models.contains(model)) {
-                models.remove(model);
-                config.getSettings().models.remove(model);
+            if (models.remove(model) != null) {
+                waitingModels.remove(model);
                 if (recordingProcesses.containsKey(model)) {
                     stopRecordingProcess(model);
+                    slotFreed = true;
                 }
+                finishInterruptedDownload(model);
                 LOG.info("Model {} removed", model);
-                config.save();
+                config.markDirty();
             } else {
                 throw new NoSuchElementException("Model " + model.getName() + " ["+model.getUrl()+"] not found in list of recorded models");
             }
         } finally {
             lock.unlock();
         }
-    }
-
-    private void startRecordingProcess(Model model) throws IOException {
-        if(model.isSuspended()) {
-            LOG.info("Recording for model {} is suspended.", model);
-            return;
-        }
 
-        if (recordingProcesses.containsKey(model)) {
-            LOG.error("A recording for model {} is already running", model);
-            return;
+        // checks the waiting models with HTTP requests, so this must not hold the lock
+        if (slotFreed) {
+            startWaitingRecordings();
         }
+    }
 
+    private void startRecordingProcess(Model model) throws IOException {
+        // the checks and the put have to be atomic. this is called from the event bus, the download threads
+        // and the process monitor, so a model could get two downloads or the slots could be exceeded otherwise
         lock.lock();
         try {
+            if(model.isSuspended()) {
+                LOG.info("Recording for model {} is suspended.", model);
+                return;
+            }
+
+            if (recordingProcesses.containsKey(model)) {
+                LOG.error("A recording for model {} is already running", model);
+                return;
+            }
+
             if (!models.contains(model)) {
                 LOG.info("Model {} has been removed. Restarting of recording cancelled.", model);
                 return;
             }
-        } finally {
-            lock.unlock();
-        }
 
-        if(!enoughSpaceForRecording()) {
-            long now = System.currentTimeMillis();
-            if( (now - lastSpaceMessage) > TimeUnit.MINUTES.toMillis(1)) {
-                LOG.info("Not enough space for recording, not starting recording for {}", model);
-                lastSpaceMessage = now;
+            File volume;
+            synchronized (recordingProcesses) {
+                volume = storagePool.selectVolume(new ArrayList<>(recordingProcesses.values()));
+            }
+            if(volume == null) {
+                long now = System.currentTimeMillis();
+                if( (now - lastSpaceMessage) > TimeUnit.MINUTES.toMillis(1)) {
+                    LOG.info("Not enough space for recording, not starting recording for {}", model);
+                    lastSpaceMessage = now;
+                }
+                return;
             }
-            return;
-        }
 
-        LOG.debug("Starting recording for model {}", model.getName());
-        Download download;
-        if (Config.isServerMode()) {
-            download = new HlsDownload(client);
-        } else {
-            download = new MergedHlsDownload(client);
-        }
+            if (!isRecordingSlotAvailable() && !preemptRecording(model)) {
+                if (waitingModels.add(model)) {
+                    LOG.info("Maximum of {} concurrent recordings reached. {} has to wait", config.getSettings().concurrentRecordings, model);
+                }
+                return;
+            }
+            waitingModels.remove(model);
+
+            LOG.debug("Starting recording for model {}", model.getName());
+            Download download;
+            if (Config.isServerMode()) {
+                download = new HlsDownload(client);
+            } else {
+                download = new MergedHlsDownload(client);
+            }
 
-        recordingProcesses.put(model, download);
-        new Thread() {
-            @Override
-            public void run() {
+            InterruptedDownload interrupted = interruptedDownloads.remove(model);
+            if (interrupted != null) {
+                LOG.info("Continuing recording {} for model {}", interrupted.download.getTarget(), model.getName());
+                download.continueRecording(interrupted.download);
+            } else {
+                download.setRecordingsDir(volume);
+            }
+
+            recordingProcesses.put(model, download);
+            long started = System.currentTimeMillis();
+            download.getFinishedFuture().thenAccept(d -> downloadTerminated(model, d, started));
+            RecordingThreads.newThread("Download [" + model.getName() + "]", () -> {
                 try {
                     download.start(model, config);
                 } catch (IOException e) {
                     LOG.error("Download for {} failed. Download alive: {}", model.getName(), download.isAlive(), e);
                 }
-            }
-        }.start();
+            }).start();
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void stopRecordingProcess(Model model)  {
         Download download = recordingProcesses.get(model);
         recordingProcesses.remove(model);
+        pendingPostProcessing.add(download);
         fireRecordingStateChanged(download.getTarget(), STOPPED, model, download.getStartTime());
 
         Runnable stopAndThePostProcess = () -> {
@@ -226,18 +286,50 @@ public class LocalRecorder implements Recorder {
         ppThreadPool.submit(stopAndThePostProcess);
     }
 
-    private void postprocess(Download download) {
+    private void finishDownload(Download download) {
+        pendingPostProcessing.add(download);
+        fireRecordingStateChanged(download.getTarget(), STOPPED, download.getModel(), download.getStartTime());
+        ppThreadPool.submit(createPostProcessor(download));
+    }
+
+    /**
+     * Post-processes the terminated download of the given model, if it has been kept for a reconnect
+     */
+    private void finishInterruptedDownload(Model model) {
+        InterruptedDownload interrupted = interruptedDownloads.remove(model);
+        if (interrupted != null) {
+            finishDownload(interrupted.download);
+        }
+    }
+
+    private void finishExpiredDownloads() {
+        long gracePeriod = TimeUnit.SECONDS.toMillis(config.getSettings().reconnectGracePeriodInSecs);
+        List<Model> expired = new ArrayList<>();
+        synchronized (interruptedDownloads) {
+            for (Entry<Model, InterruptedDownload> entry : interruptedDownloads.entrySet()) {
+                if (System.currentTimeMillis() - entry.getValue().terminatedAt > gracePeriod) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        for (Model model : expired) {
+            LOG.debug("Model {} didn't come back in time. Recording is finished", model.getName());
+            finishInterruptedDownload(model);
+        }
+    }
+
+    private void postprocess(Job job) {
         String postProcessing = Config.getInstance().getSettings().postProcessing;
         if (postProcessing != null && !postProcessing.isEmpty()) {
             Runtime rt = Runtime.getRuntime();
             try {
                 String[] args = new String[] {
                         postProcessing,
-                        download.getTarget().getParentFile().getAbsolutePath(),
-                        download.getTarget().getAbsolutePath(),
-                        download.getModel().getName(),
-                        download.getModel().getSite().getName(),
-                        Long.toString(download.getStartTime().getEpochSecond())
+                        job.getTarget().getParentFile().getAbsolutePath(),
+                        job.getTarget().getAbsolutePath(),
+                        job.model.getName(),
+                        job.model.getSite() != null ? job.model.getSite().getName() : "",
+                        Long.toString(job.startTime.getEpochSecond())
                 };
                 LOG.debug("Running {}", Arrays.toString(args));
                 Process process = rt.exec(args, OS.getEnvironment());
@@ -261,38 +353,17 @@ public class LocalRecorder implements Recorder {
 
     @Override
     public boolean isRecording(Model model) {
-        lock.lock();
-        try {
-            return models.contains(model);
-        } finally {
-            lock.unlock();
-        }
+        return models.contains(model);
     }
 
     @Override
     public boolean isSuspended(Model model) {
-        lock.lock();
-        try {
-            int index = models.indexOf(model);
-            if(index >= 0) {
-                Model m = models.get(index);
-                return m.isSuspended();
-            } else {
-                return false;
-            }
-        } finally {
-            lock.unlock();
-        }
+        return models.get(model).map(Model::isSuspended).orElse(false);
     }
 
     @Override
     public List<Model> getModelsRecording() {
-        lock.lock();
-        try {
-            return Collections.unmodifiableList(new ArrayList<>(models));
-        } finally {
-            lock.unlock();
-        }
+        return models.getModels();
     }
 
     @Override
@@ -315,26 +386,195 @@ public class LocalRecorder implements Recorder {
         recording = false;
         LOG.debug("Stopping monitor threads");
         processMonitor.running = false;
-        LOG.debug("Stopping all recording processes");
-        stopRecordingProcesses();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getSettings().shutdownTimeoutInSecs);
+
+        // signal all downloads at once and wait for them in parallel. downloads, which are already queued for
+        // post-processing, might not have been stopped yet, so they are stopped, too. They are released by
+        // their post-processing, the others are released here
+        List<Download> downloads = new ArrayList<>();
+        Set<Download> queuedForPostProcessing;
+        lock.lock();
+        try {
+            queuedForPostProcessing = new HashSet<>(pendingPostProcessing);
+            synchronized (recordingProcesses) {
+                downloads.addAll(recordingProcesses.values());
+                pendingPostProcessing.addAll(recordingProcesses.values());
+                recordingProcesses.clear();
+            }
+            synchronized (interruptedDownloads) {
+                for (InterruptedDownload interrupted : interruptedDownloads.values()) {
+                    pendingPostProcessing.add(interrupted.download);
+                }
+                interruptedDownloads.clear();
+            }
+            downloads.addAll(pendingPostProcessing);
+        } finally {
+            lock.unlock();
+        }
+        LOG.debug("Stopping {} recording processes", downloads.size());
+        stopDownloads(downloads, queuedForPostProcessing, deadline);
+
+        // give running post-processing the rest of the time, everything else is done on the next start
         ppThreadPool.shutdown();
+        try {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !ppThreadPool.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                LOG.info("Post-processing didn't finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveBacklog();
+        ppThreadPool.shutdownNow();
+        storageManager.shutdown();
+        catalog.shutdown();
+        deletionService.shutdown();
+        RecordingThreads.shutdown();
         client.shutdown();
+        try {
+            config.flush();
+        } catch (IOException e) {
+            LOG.error("Couldn't save config", e);
+        }
     }
 
-    private void stopRecordingProcesses() {
+    private void stopDownloads(List<Download> downloads, Set<Download> queuedForPostProcessing, long deadline) {
+        CompletableFuture<?>[] stopped = new CompletableFuture<?>[downloads.size()];
+        for (int i = 0; i < stopped.length; i++) {
+            Download download = downloads.get(i);
+            String name = download.getModel() != null ? download.getModel().getName() : "";
+            stopped[i] = CompletableFuture.runAsync(download::stop, r -> RecordingThreads.newThread("Stop [" + name + "]", r).start());
+        }
+        try {
+            CompletableFuture.allOf(stopped).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Not all recordings stopped in time. Some recordings might be cut off");
+            RecordingThreads.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("Error while stopping recordings", e);
+        }
+        // finalize the files of the stopped downloads
+        for (Download download : downloads) {
+            if (!download.isAlive() && !queuedForPostProcessing.contains(download)) {
+                try {
+                    download.release();
+                } catch (Exception e) {
+                    LOG.error("Couldn't release download {}", download.getTarget(), e);
+                }
+            }
+        }
+    }
+
+    private void saveBacklog() {
+        synchronized (backlog) {
+            List<Job> jobs = new ArrayList<>(resumedPostProcessing);
+            for (Download download : pendingPostProcessing) {
+                if (download.getTarget() != null && download.getModel() != null) {
+                    jobs.add(new Job(download.getTarget(), download.getModel(), download.getStartTime()));
+                }
+            }
+            try {
+                backlog.save(jobs);
+            } catch (IOException e) {
+                LOG.error("Couldn't save post-processing backlog", e);
+            }
+        }
+    }
+
+    private void stopLowestPriorityRecordingOnFullVolume() {
         lock.lock();
         try {
-            for (Model model : models) {
-                Download recordingProcess = recordingProcesses.get(model);
-                if (recordingProcess != null) {
-                    stopRecordingProcess(model);
+            Entry<Model, Download> victim = findLeastImportantRecording(entry -> {
+                File volume = storagePool.getVolume(entry.getValue().getTarget());
+                return volume != null && !storagePool.hasEnoughSpace(volume);
+            });
+            if (victim != null) {
+                LOG.info("No space left -> Stopping recording of {}", victim.getKey());
+                stopRecordingProcess(victim.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the running recording with the lowest priority, which matches the filter. If several recordings have
+     * the same priority, the most recent one is returned, because it is the shortest
+     */
+    private Entry<Model, Download> findLeastImportantRecording(Predicate<Entry<Model, Download>> filter) {
+        Entry<Model, Download> victim = null;
+        synchronized (recordingProcesses) {
+            for (Entry<Model, Download> entry : recordingProcesses.entrySet()) {
+                if (!filter.test(entry)) {
+                    continue;
+                }
+                if (victim == null
+                        || entry.getKey().getPriority() < victim.getKey().getPriority()
+                        || entry.getKey().getPriority() == victim.getKey().getPriority() && isStartedLater(entry.getValue(), victim.getValue())) {
+                    victim = entry;
                 }
             }
+        }
+        return victim;
+    }
+
+    private boolean isStartedLater(Download a, Download b) {
+        if (a.getStartTime() == null || b.getStartTime() == null) {
+            return a.getStartTime() == null;
+        }
+        return a.getStartTime().isAfter(b.getStartTime());
+    }
+
+    private boolean isRecordingSlotAvailable() {
+        int max = config.getSettings().concurrentRecordings;
+        return max <= 0 || recordingProcesses.size() < max;
+    }
+
+    /**
+     * Stops the running recording with the lowest priority, if its priority is lower than the priority of the given model.
+     * The model of the stopped recording waits for a free slot then.
+     * @return true, if a recording has been stopped
+     */
+    private boolean preemptRecording(Model model) {
+        lock.lock();
+        try {
+            Entry<Model, Download> victim = findLeastImportantRecording(entry -> entry.getKey().getPriority() < model.getPriority());
+            if (victim == null) {
+                return false;
+            }
+            LOG.info("Stopping recording of {} (priority {}) in favor of {} (priority {})", victim.getKey(), victim.getKey().getPriority(),
+                    model, model.getPriority());
+            stopRecordingProcess(victim.getKey());
+            waitingModels.add(victim.getKey());
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Starts the waiting models with the highest priority, which are still online, as long as there are free slots
+     */
+    private void startWaitingRecordings() {
+        while (recording && !waitingModels.isEmpty() && isRecordingSlotAvailable()) {
+            Optional<Model> next = waitingModels.stream().max(Comparator.comparingInt(Model::getPriority));
+            if (!next.isPresent() || !waitingModels.remove(next.get())) {
+                continue;
+            }
+            Model model = next.get();
+            try {
+                if (models.contains(model) && !model.isSuspended() && model.isOnline(IGNORE_CACHE)) {
+                    LOG.info("Starting waiting recording for {}", model);
+                    startRecordingProcess(model);
+                }
+            } catch (Exception e) {
+                LOG.error("Couldn't start waiting recording for {}", model, e);
+            }
+        }
+    }
+
     private void tryRestartRecording(Model model) {
         if (!recording) {
             // recorder is not in recording state
@@ -346,7 +586,6 @@ public class LocalRecorder implements Recorder {
             boolean online = model.isOnline(IGNORE_CACHE);
             if (modelInRecordingList && online) {
                 LOG.info("Restarting recording for model {}", model);
-                recordingProcesses.remove(model);
                 startRecordingProcess(model);
             }
         } catch (Exception e) {
@@ -354,6 +593,31 @@ public class LocalRecorder implements Recorder {
         }
     }
 
+    /**
+     * Called as soon as a download has terminated. Starts the post-processing and restarts
+     * the recording, if the model is still online
+     */
+    private void downloadTerminated(Model model, Download download, long started) {
+        if (!recordingProcesses.remove(model, download)) {
+            // the download has been stopped by the recorder, which takes care of the post-processing
+            return;
+        }
+        LOG.debug("Recording terminated for model {}", model.getName());
+        if (config.getSettings().reconnectGracePeriodInSecs > 0 && recording) {
+            // keep the recording open for a while, the model might come back after a short disconnect
+            interruptedDownloads.put(model, new InterruptedDownload(download));
+        } else {
+            finishDownload(download);
+        }
+        if (System.currentTimeMillis() - started > MIN_RESTART_INTERVAL) {
+            tryRestartRecording(model);
+        } else {
+            // the download failed right away. don't restart it in a tight loop, the online monitor will restart it
+            LOG.debug("Download for {} failed immediately. Not restarting it right away", model.getName());
+        }
+        startWaitingRecordings();
+    }
+
     private class ProcessMonitor extends Thread {
         private volatile boolean running = false;
 
@@ -367,35 +631,33 @@ public class LocalRecorder implements Recorder {
             running = true;
             while (running) {
                 try {
-                    if(!enoughSpaceForRecording() && !recordingProcesses.isEmpty()) {
-                        LOG.info("No space left -> Stopping all recordings");
-                        stopRecordingProcesses();
-                    }
+                    storageManager.update(new ArrayList<>(recordingProcesses.values()));
+                    // the storage manager couldn't free enough space in time. stop one recording per pass,
+                    // so that the others can go on, if that is enough
+                    stopLowestPriorityRecordingOnFullVolume();
                 } catch (IOException e1) {
                     LOG.warn("Couldn't check free space left", e1);
                 }
 
-                List<Model> restart = new ArrayList<>();
-                for (Iterator<Entry<Model, Download>> iterator = recordingProcesses.entrySet().iterator(); iterator.hasNext();) {
-                    Entry<Model, Download> entry = iterator.next();
-                    Model m = entry.getKey();
-                    Download download = entry.getValue();
-                    if (!download.isAlive()) {
-                        LOG.debug("Recording terminated for model {}", m.getName());
-                        iterator.remove();
-                        restart.add(m);
-                        fireRecordingStateChanged(download.getTarget(), STOPPED, m, download.getStartTime());
-                        Runnable pp = createPostProcessor(download);
-                        ppThreadPool.submit(pp);
+                // terminated downloads are handled by downloadTerminated(). this is only a safety net
+                // for downloads, which died without completing their future
+                List<Entry<Model, Download>> dead = new ArrayList<>();
+                synchronized (recordingProcesses) {
+                    for (Entry<Model, Download> entry : recordingProcesses.entrySet()) {
+                        if (!entry.getValue().isAlive()) {
+                            dead.add(entry);
+                        }
                     }
                 }
-                for (Model m : restart) {
-                    tryRestartRecording(m);
+                for (Entry<Model, Download> entry : dead) {
+                    downloadTerminated(entry.getKey(), entry.getValue(), 0);
                 }
+                finishExpiredDownloads();
+                startWaitingRecordings();
 
                 try {
                     if (running)
-                        Thread.sleep(1000);
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
                 } catch (InterruptedException e) {
                     LOG.error("Couldn't sleep", e);
                 }
@@ -404,6 +666,15 @@ public class LocalRecorder implements Recorder {
         }
     }
 
+    private static class InterruptedDownload {
+        private Download download;
+        private long terminatedAt = System.currentTimeMillis();
+
+        public InterruptedDownload(Download download) {
+            this.download = download;
+        }
+    }
+
     private void generatePlaylist(File recDir) {
         PlaylistGenerator playlistGenerator = new PlaylistGenerator();
         playlistGenerators.put(recDir, playlistGenerator);
@@ -423,23 +694,58 @@ public class LocalRecorder implements Recorder {
         }
     }
 
+    private void concatenateSegments(File recDir) {
+        if(!new File(recDir, "playlist.m3u8").exists()) {
+            LOG.warn("{} has no playlist. Not going to merge the segments", recDir);
+            return;
+        }
+        try {
+            new SegmentConcatenator().concatenate(recDir);
+        } catch (Exception e) {
+            LOG.error("Couldn't merge the segments of {}. Keeping the segments", recDir, e);
+            new File(recDir, SegmentConcatenator.MERGED_FILE + ".part").delete();
+        }
+    }
+
     private void fireRecordingStateChanged(File path, Recording.State newState, Model model, Instant startTime) {
         RecordingStateChangedEvent evt = new RecordingStateChangedEvent(path, newState, model, startTime);
         EventBusHolder.BUS.post(evt);
     }
 
     /**
-     * This is called once at start for server mode. When the server is killed, recordings are
-     * left without playlist. This method creates playlists for them.
+     * Generates the playlists of the recordings, which were interrupted by a crash. If there is a journal, only the
+     * recordings in flight are touched. Otherwise all recordings have to be scanned.
+     * @param leftOver the recordings from the post-processing backlog. They are handled by the post-processing
      */
-    private void processUnfinishedRecordings() {
+    private void processUnfinishedRecordings(List<Job> leftOver) {
+        if (journal.exists()) {
+            Set<File> resumed = leftOver.stream().map(Job::getTarget).collect(Collectors.toSet());
+            for (File recDir : journal.getInFlight()) {
+                if (resumed.contains(recDir)) {
+                    continue;
+                }
+                LOG.info("Recovering unfinished recording {}", recDir);
+                ppThreadPool.submit(() -> {
+                    try {
+                        if (recDir.exists()) {
+                            generatePlaylist(recDir);
+                        }
+                    } finally {
+                        journal.finished(recDir);
+                    }
+                });
+            }
+            journal.compact();
+            return;
+        }
+
+        LOG.info("No recording journal found. Scanning all recordings for unfinished ones");
         try {
             List<Recording> recs = getRecordings();
             for (Recording rec : recs) {
                 if (rec.getStatus() == RECORDING) {
                     boolean recordingProcessFound = false;
-                    File recordingsDir = new File(config.getSettings().recordingsDir);
-                    File recDir = new File(recordingsDir, rec.getPath());
+                    File recDir = storagePool.resolve(rec.getPath());
                     for (Entry<Model, Download> download : recordingProcesses.entrySet()) {
                         if (download.getValue().getTarget().equals(recDir)) {
                             recordingProcessFound = true;
@@ -455,212 +761,183 @@ public class LocalRecorder implements Recorder {
         } catch (Exception e) {
             LOG.error("Unexpected error in playlist trigger", e);
         }
+        journal.compact();
     }
 
     @Override
     public List<Recording> getRecordings() {
-        if(Config.isServerMode()) {
-            return listSegmentedRecordings();
-        } else {
-            return listMergedRecordings();
+        // the catalog isn't notified about the new segments of running recordings, so we have to read them again
+        List<Download> running = new ArrayList<>(recordingProcesses.values());
+        for (Download download : running) {
+            if (download.getTarget() != null) {
+                catalog.update(download.getTarget());
+            }
+        }
+        Map<String, String> sites = getSiteNames();
+        Set<File> runningTargets = getRunningTargets(running);
+        Set<File> postProcessingTargets = getPostProcessingTargets();
+
+        Map<File, Recording> recordingsByPath = catalog.getRecordingsByPath();
+        List<Recording> recordings = new ArrayList<>(recordingsByPath.size());
+        for (Entry<File, Recording> entry : recordingsByPath.entrySet()) {
+            recordings.add(complete(entry.getValue(), entry.getKey(), sites, runningTargets, postProcessingTargets));
         }
+        return recordings;
     }
 
-    private List<Recording> listMergedRecordings() {
-        File recordingsDir = new File(config.getSettings().recordingsDir);
-        List<File> possibleRecordings = new LinkedList<>();
-        listRecursively(recordingsDir, possibleRecordings, (dir, name) -> name.matches(".*?_\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}\\.ts"));
-        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
-        List<Recording> recordings = new ArrayList<>();
-        for (File ts: possibleRecordings) {
-            try {
-                String filename = ts.getName();
-                String dateString = filename.substring(filename.length() - 3 - DATE_FORMAT.length(), filename.length() - 3);
-                Date startDate = sdf.parse(dateString);
-                Recording recording = new Recording();
-                recording.setModelName(filename.substring(0, filename.length() - 4 - DATE_FORMAT.length()));
-                recording.setStartDate(Instant.ofEpochMilli(startDate.getTime()));
-                String path = ts.getAbsolutePath().replace(config.getSettings().recordingsDir, "");
-                if(!path.startsWith("/")) {
-                    path = '/' + path;
+    /**
+     * Only looks up the recordings of the running downloads, the playlist generators and the post-processing,
+     * so the cost doesn't depend on the number of finished recordings.
+     */
+    @Override
+    public List<Recording> getRecordingsInProgress() {
+        List<Download> running = new ArrayList<>(recordingProcesses.values());
+        for (Download download : running) {
+            if (download.getTarget() != null) {
+                catalog.update(download.getTarget());
+            }
+        }
+        Map<String, String> sites = getSiteNames();
+        Set<File> runningTargets = getRunningTargets(running);
+        Set<File> postProcessingTargets = getPostProcessingTargets();
+
+        Set<File> inProgress = new HashSet<>(runningTargets);
+        inProgress.addAll(postProcessingTargets);
+        inProgress.addAll(playlistGenerators.keySet());
+        List<Recording> recordings = new ArrayList<>(inProgress.size());
+        for (File path : inProgress) {
+            Recording recording = catalog.get(path);
+            if (recording != null) {
+                complete(recording, path, sites, runningTargets, postProcessingTargets);
+                if (recording.getStatus() != FINISHED) {
+                    recordings.add(recording);
                 }
-                recording.setPath(path);
-                recording.setSizeInByte(ts.length());
-                recording.setStatus(getStatus(recording));
-                recordings.add(recording);
-            } catch(Exception e) {
-                LOG.error("Ignoring {} - {}", ts.getAbsolutePath(), e.getMessage());
             }
         }
         return recordings;
     }
 
-    private State getStatus(Recording recording) {
-        File absolutePath = new File(Config.getInstance().getSettings().recordingsDir, recording.getPath());
-
-        PlaylistGenerator playlistGenerator = playlistGenerators.get(absolutePath);
-        if (playlistGenerator != null) {
-            recording.setProgress(playlistGenerator.getProgress());
-            return GENERATING_PLAYLIST;
+    private Recording complete(Recording recording, File absolutePath, Map<String, String> sites, Set<File> runningTargets, Set<File> postProcessingTargets) {
+        recording.setStatus(getStatus(recording, absolutePath, runningTargets, postProcessingTargets));
+        if (recording.getSiteName() == null) {
+            recording.setSiteName(sites.get(recording.getModelName()));
         }
+        return recording;
+    }
 
-        if (Config.isServerMode()) {
-            if (recording.hasPlaylist()) {
-                return FINISHED;
-            } else {
-                return RECORDING;
-            }
-        } else {
-            boolean dirUsedByRecordingProcess = false;
-            for (Download download : recordingProcesses.values()) {
-                if(absolutePath.equals(download.getTarget())) {
-                    dirUsedByRecordingProcess = true;
-                    break;
+    /**
+     * The site is saved with the metadata of the recording. Older recordings don't have it, so we look it up
+     * in the recorded models, unless two sites have a model with this name
+     * @return the site names by model name
+     */
+    private Map<String, String> getSiteNames() {
+        Map<String, String> sites = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (Model model : models.getModels()) {
+            if (model.getSite() != null) {
+                String other = sites.put(model.getName(), model.getSite().getName());
+                if (other != null && !other.equals(model.getSite().getName())) {
+                    ambiguous.add(model.getName());
                 }
             }
-            if(dirUsedByRecordingProcess) {
-                return RECORDING;
-            } else {
-                return FINISHED;
-            }
         }
+        sites.keySet().removeAll(ambiguous);
+        return sites;
     }
 
-    private List<Recording> listSegmentedRecordings() {
-        List<Recording> recordings = new ArrayList<>();
-        File recordingsDir = new File(config.getSettings().recordingsDir);
-        File[] subdirs = recordingsDir.listFiles();
-        if (subdirs == null) {
-            return Collections.emptyList();
+    /**
+     * The targets of the running downloads are collected once, so that the status of each recording is a lookup
+     */
+    private Set<File> getRunningTargets(List<Download> running) {
+        Set<File> runningTargets = new HashSet<>();
+        for (Download download : running) {
+            addTarget(runningTargets, download);
         }
-
-        for (File subdir : subdirs) {
-            // ignore empty directories
-            File[] recordingsDirs = subdir.listFiles();
-            if(recordingsDirs == null || recordingsDirs.length == 0) {
-                continue;
-            }
-
-            // start going over valid directories
-            for (File rec : recordingsDirs) {
-                SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
-                if (rec.isDirectory()) {
-                    try {
-                        // ignore directories, which are probably not created by ctbrec
-                        if (rec.getName().length() != DATE_FORMAT.length()) {
-                            continue;
-                        }
-                        // ignore empty directories
-                        if (rec.listFiles().length == 0) {
-                            continue;
-                        }
-                        // don't list recordings, which currently get deleted
-                        if (deleteInProgress.contains(rec)) {
-                            continue;
-                        }
-
-                        Date startDate = sdf.parse(rec.getName());
-                        Recording recording = new Recording();
-                        recording.setModelName(subdir.getName());
-                        recording.setStartDate(Instant.ofEpochMilli(startDate.getTime()));
-                        recording.setPath(recording.getModelName() + "/" + rec.getName());
-                        recording.setSizeInByte(getSize(rec));
-                        File playlist = new File(rec, "playlist.m3u8");
-                        recording.setHasPlaylist(playlist.exists());
-                        recording.setStatus(getStatus(recording));
-                        recordings.add(recording);
-                    } catch (Exception e) {
-                        LOG.debug("Ignoring {} - {}", rec.getAbsolutePath(), e.getMessage());
-                    }
-                }
+        synchronized (interruptedDownloads) {
+            for (InterruptedDownload interrupted : interruptedDownloads.values()) {
+                addTarget(runningTargets, interrupted.download);
             }
         }
-        return recordings;
+        return runningTargets;
     }
 
-    private void listRecursively(File dir, List<File> result, FilenameFilter filenameFilter) {
-        File[] files = dir.listFiles();
-        if(files != null) {
-            for (File file : files) {
-                if(file.isDirectory()) {
-                    listRecursively(file, result, filenameFilter);
-                }
-                if(filenameFilter.accept(dir, file.getName())) {
-                    result.add(file);
-                }
+    private Set<File> getPostProcessingTargets() {
+        Set<File> postProcessingTargets = new HashSet<>();
+        for (Download download : pendingPostProcessing) {
+            addTarget(postProcessingTargets, download);
+        }
+        for (Job job : resumedPostProcessing) {
+            if (job.getTarget() != null) {
+                postProcessingTargets.add(job.getTarget().getAbsoluteFile());
             }
         }
+        return postProcessingTargets;
     }
 
-    private long getSize(File rec) {
-        long size = 0;
-        File[] files = rec.listFiles();
-        for (File file : files) {
-            size += file.length();
+    private void addTarget(Set<File> targets, Download download) {
+        if (download.getTarget() != null) {
+            targets.add(download.getTarget().getAbsoluteFile());
         }
-        return size;
     }
 
     @Override
-    public void delete(Recording recording) throws IOException {
-        File recordingsDir = new File(config.getSettings().recordingsDir);
-        File path = new File(recordingsDir, recording.getPath());
-        LOG.debug("Deleting {}", path);
-
-        if(path.isFile()) {
-            Files.delete(path.toPath());
-            deleteEmptyParents(path.getParentFile());
-        } else {
-            deleteDirectory(path);
-            deleteEmptyParents(path);
-        }
+    public RecordingQuery.Result queryRecordings(RecordingQuery query) {
+        return query.execute(getRecordings());
     }
 
-    private void deleteEmptyParents(File parent) throws IOException {
-        File recDir = new File(Config.getInstance().getSettings().recordingsDir);
-        while(parent != null && parent.list() != null && parent.list().length == 0) {
-            if(parent.equals(recDir)) {
-                return;
-            }
-            LOG.debug("Deleting empty directory {}", parent.getAbsolutePath());
-            Files.delete(parent.toPath());
-            parent = parent.getParentFile();
+    /**
+     * @param absolutePath the path of the recording on its volume
+     * @param runningTargets the absolute targets of the running and interrupted downloads
+     * @param postProcessingTargets the absolute targets of the downloads, which are waiting for or in the post-processing
+     */
+    private State getStatus(Recording recording, File absolutePath, Set<File> runningTargets, Set<File> postProcessingTargets) {
+        PlaylistGenerator playlistGenerator = playlistGenerators.get(absolutePath);
+        if (playlistGenerator != null) {
+            recording.setProgress(playlistGenerator.getProgress());
+            return GENERATING_PLAYLIST;
         }
-    }
 
-    private void deleteDirectory(File directory) throws IOException {
-        if (!directory.exists()) {
-            throw new IOException("Recording does not exist");
+        // the playlist might exist already, but the post-processing can still change the files, e.g. merge the segments
+        if (postProcessingTargets.contains(absolutePath)) {
+            return POST_PROCESSING;
         }
 
-        try {
-            deleteInProgress.add(directory);
-            File[] files = directory.listFiles();
-            boolean deletedAllFiles = true;
-            for (File file : files) {
-                try {
-                    LOG.trace("Deleting {}", file.getAbsolutePath());
-                    Files.delete(file.toPath());
-                } catch (Exception e) {
-                    deletedAllFiles = false;
-                    LOG.debug("Couldn't delete {}", file, e);
-                }
+        if (Config.isServerMode()) {
+            if (recording.hasPlaylist()) {
+                return FINISHED;
+            } else {
+                return RECORDING;
             }
-
-            if (!deletedAllFiles) {
-                throw new IOException("Couldn't delete all files in " + directory);
+        } else {
+            if(runningTargets.contains(absolutePath)) {
+                return RECORDING;
+            } else {
+                return FINISHED;
             }
-        } finally {
-            deleteInProgress.remove(directory);
         }
     }
 
+    @Override
+    public void delete(Recording recording) throws IOException {
+        delete(Collections.singletonList(recording));
+    }
+
+    @Override
+    public void delete(List<Recording> recordings) throws IOException {
+        List<File> paths = new ArrayList<>(recordings.size());
+        for (Recording recording : recordings) {
+            paths.add(storagePool.resolve(recording.getPath()));
+        }
+        // hides the recordings right away, the files are deleted in the background
+        deletionService.delete(paths);
+    }
+
     @Override
     public void switchStreamSource(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
-        if (models.contains(model)) {
-            int index = models.indexOf(model);
-            models.get(index).setStreamUrlIndex(model.getStreamUrlIndex());
-            config.save();
+        Optional<Model> registered = models.get(model);
+        if (registered.isPresent()) {
+            registered.get().setStreamUrlIndex(model.getStreamUrlIndex());
+            config.markDirty();
             LOG.debug("Switching stream source to index {} for model {}", model.getStreamUrlIndex(), model.getName());
             Download download = recordingProcesses.get(model);
             if(download != null) {
@@ -673,44 +950,62 @@ public class LocalRecorder implements Recorder {
         }
     }
 
+    @Override
+    public void priorityChanged(Model model) throws IOException {
+        Optional<Model> registered = models.get(model);
+        if (registered.isPresent()) {
+            Model m = registered.get();
+            m.setPriority(model.getPriority());
+            config.markDirty();
+            LOG.debug("Priority of model {} changed to {}", m.getName(), m.getPriority());
+            if (waitingModels.contains(m)) {
+                // the model might be allowed to preempt another recording now
+                startRecordingProcess(m);
+            }
+        } else {
+            LOG.warn("Couldn't change priority of model {}. Not found in list", model.getName());
+        }
+    }
+
     @Override
     public void suspendRecording(Model model) {
         lock.lock();
         try {
-            if (models.contains(model)) {
-                int index = models.indexOf(model);
-                models.get(index).setSuspended(true);
+            Optional<Model> registered = models.get(model);
+            if (registered.isPresent()) {
+                registered.get().setSuspended(true);
                 model.setSuspended(true);
-                config.save();
+                config.markDirty();
             } else {
                 LOG.warn("Couldn't suspend model {}. Not found in list", model.getName());
                 return;
             }
-        } catch (IOException e) {
-            LOG.error("Couldn't save config", e);
         } finally {
             lock.unlock();
         }
 
+        waitingModels.remove(model);
         Download download = recordingProcesses.get(model);
         if(download != null) {
             stopRecordingProcess(model);
+            startWaitingRecordings();
         }
+        finishInterruptedDownload(model);
     }
 
     @Override
     public void resumeRecording(Model model) throws IOException {
         lock.lock();
         try {
-            if (models.contains(model)) {
-                int index = models.indexOf(model);
-                Model m = models.get(index);
+            Optional<Model> registered = models.get(model);
+            if (registered.isPresent()) {
+                Model m = registered.get();
                 m.setSuspended(false);
                 if(m.isOnline()) {
                     startRecordingProcess(m);
                 }
                 model.setSuspended(false);
-                config.save();
+                config.markDirty();
             } else {
                 LOG.warn("Couldn't resume model {}. Not found in list", model.getName());
                 return;
@@ -729,61 +1024,103 @@ public class LocalRecorder implements Recorder {
 
     @Override
     public long getTotalSpaceBytes() throws IOException {
-        return getRecordingsFileStore().getTotalSpace();
+        return storagePool.getTotalSpaceBytes();
     }
 
     @Override
     public long getFreeSpaceBytes() throws IOException {
-        return getRecordingsFileStore().getUsableSpace();
-    }
-
-    private FileStore getRecordingsFileStore() throws IOException {
-        File recordingsDir = new File(config.getSettings().recordingsDir);
-        FileStore store = Files.getFileStore(recordingsDir.toPath());
-        return store;
-    }
-
-    private boolean enoughSpaceForRecording() throws IOException {
-        long minimum = config.getSettings().minimumSpaceLeftInBytes;
-        if(minimum == 0) { // 0 means don't check
-            return true;
-        } else {
-            return getFreeSpaceBytes() > minimum;
-        }
+        return storagePool.getFreeSpaceBytes();
     }
 
     private Runnable createPostProcessor(Download download) {
         return () -> {
-            LOG.debug("Starting post-processing for {}", download.getTarget());
+            try {
+                download.release();
+                postProcess(new Job(download.getTarget(), download.getModel(), download.getStartTime()));
+            } finally {
+                pendingPostProcessing.remove(download);
+            }
+        };
+    }
+
+    private void postProcess(Job job) {
+        LOG.debug("Starting post-processing for {}", job.getTarget());
+        try {
             if(Config.isServerMode()) {
-                fireRecordingStateChanged(download.getTarget(), GENERATING_PLAYLIST, download.getModel(), download.getStartTime());
-                generatePlaylist(download.getTarget());
+                fireRecordingStateChanged(job.getTarget(), GENERATING_PLAYLIST, job.model, job.startTime);
+                generatePlaylist(job.getTarget());
             }
-            boolean deleted = deleteIfTooShort(download);
+            boolean deleted = deleteIfTooShort(job);
             if(deleted) {
                 // recording was too short. stop here and don't do post-processing
                 return;
             }
-            fireRecordingStateChanged(download.getTarget(), POST_PROCESSING, download.getModel(), download.getStartTime());
-            postprocess(download);
-            fireRecordingStateChanged(download.getTarget(), FINISHED, download.getModel(), download.getStartTime());
-        };
+            fireRecordingStateChanged(job.getTarget(), POST_PROCESSING, job.model, job.startTime);
+            if(Config.isServerMode() && config.getSettings().concatenateSegments) {
+                concatenateSegments(job.getTarget());
+            }
+            postprocess(job);
+            RecordingMetadata.updateSize(job.getTarget());
+            fireRecordingStateChanged(job.getTarget(), FINISHED, job.model, job.startTime);
+        } finally {
+            if (journal != null) {
+                journal.finished(job.getTarget());
+            }
+        }
+    }
+
+    /**
+     * Post-processes the recordings, which were left over, when the recorder was shut down the last time
+     */
+    private void resumePostProcessing(List<Job> jobs) {
+        for (Job job : jobs) {
+            LOG.info("Resuming post-processing for {}", job.getTarget());
+            resumedPostProcessing.add(job);
+            ppThreadPool.submit(() -> {
+                try {
+                    postProcess(job);
+                } finally {
+                    resumedPostProcessing.remove(job);
+                    removeFromBacklog();
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the backlog with the resumed jobs, which are left. During the shutdown the whole backlog is saved
+     * instead, see {@link #saveBacklog()}
+     */
+    private void removeFromBacklog() {
+        synchronized (backlog) {
+            if (ppThreadPool.isShutdown()) {
+                return;
+            }
+            try {
+                backlog.save(new ArrayList<>(resumedPostProcessing));
+            } catch (IOException e) {
+                LOG.error("Couldn't save post-processing backlog", e);
+            }
+        }
     }
 
 
     // TODO maybe get file size and bitrate and check, if the values are plausible
     // we could also compare the length with the time elapsed since starting the recording
-    private boolean deleteIfTooShort(Download download) {
+    private boolean deleteIfTooShort(Job job) {
         long minimumLengthInSeconds = Config.getInstance().getSettings().minimumLengthInSeconds;
         if(minimumLengthInSeconds <= 0) {
             return false;
         }
 
         try {
-            LOG.debug("Determining video length for {}", download.getTarget());
-            File target = download.getTarget();
+            File target = job.getTarget();
+            LOG.debug("Determining video length for {}", target);
             double duration = 0;
-            if(target.isDirectory()) {
+            RecordingMetadata metadata = RecordingMetadata.load(target);
+            if(metadata != null && metadata.durationInSeconds > 0) {
+                duration = metadata.durationInSeconds;
+            } else if(target.isDirectory()) {
                 File playlist = new File(target, "playlist.m3u8");
                 duration = getPlaylistLength(playlist);
             } else {
@@ -791,17 +1128,10 @@ public class LocalRecorder implements Recorder {
             }
             Duration minLength = Duration.ofSeconds(minimumLengthInSeconds);
             Duration videoLength = Duration.ofSeconds((long) duration);
-            LOG.debug("Recording started at:{}. Video length is {}", download.getStartTime(), videoLength);
+            LOG.debug("Recording started at:{}. Video length is {}", job.startTime, videoLength);
             if(videoLength.minus(minLength).isNegative()) {
-                LOG.debug("Video too short {} {}", videoLength, download.getTarget());
-                LOG.debug("Deleting {}", target);
-                if(target.isDirectory()) {
-                    deleteDirectory(target);
-                    deleteEmptyParents(target);
-                } else {
-                    Files.delete(target.toPath());
-                    deleteEmptyParents(target.getParentFile());
-                }
+                LOG.debug("Video too short {} {}", videoLength, target);
+                deletionService.deleteNow(target);
                 return true;
             } else {
                 return false;
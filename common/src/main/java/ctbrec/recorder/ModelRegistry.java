@@ -0,0 +1,110 @@
+package ctbrec.recorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ctbrec.Model;
+
+/**
+ * The models, which are recorded by the {@link LocalRecorder}, indexed by site and model name.
+ * <p>
+ * Lookups don't block. Iteration happens on an immutable snapshot, which is replaced on every change,
+ * so callers like the OnlineMonitor or the servlets can iterate without holding a lock. Changes are
+ * applied to the given list of the settings, too, so that the config is kept in sync. All changes hold the lock of
+ * that list, so that {@link ctbrec.Config} can serialize it without getting a ConcurrentModificationException.
+ */
+public class ModelRegistry {
+
+    private final ConcurrentHashMap<String, Model> models = new ConcurrentHashMap<>();
+    private final List<Model> settingsModels;
+    private final Object lock;
+    private volatile List<Model> snapshot = Collections.emptyList();
+
+    /**
+     * @param settingsModels the model list of the settings, which gets updated on every change
+     */
+    public ModelRegistry(List<Model> settingsModels) {
+        this.settingsModels = settingsModels;
+        this.lock = settingsModels;
+    }
+
+    /**
+     * Adds a model, which is already contained in the settings (e.g. when the recorder is initialized)
+     */
+    public void load(Model model) {
+        synchronized (lock) {
+            if (models.putIfAbsent(key(model), model) == null) {
+                addToSnapshot(model);
+            }
+        }
+    }
+
+    /**
+     * @return true, if the model has been added, false if it was registered already
+     */
+    public boolean add(Model model) {
+        synchronized (lock) {
+            if (models.putIfAbsent(key(model), model) != null) {
+                return false;
+            }
+            settingsModels.add(model);
+            addToSnapshot(model);
+            return true;
+        }
+    }
+
+    /**
+     * @return the removed instance or null, if the model was not registered
+     */
+    public Model remove(Model model) {
+        synchronized (lock) {
+            Model removed = models.remove(key(model));
+            if (removed != null) {
+                settingsModels.remove(removed);
+                List<Model> copy = new ArrayList<>(snapshot);
+                copy.remove(removed);
+                snapshot = Collections.unmodifiableList(copy);
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * @return the registered instance of the model, which might be different from the given instance
+     */
+    public Optional<Model> get(Model model) {
+        return Optional.ofNullable(models.get(key(model)));
+    }
+
+    public boolean contains(Model model) {
+        return models.containsKey(key(model));
+    }
+
+    /**
+     * @return an unmodifiable snapshot of all registered models
+     */
+    public List<Model> getModels() {
+        return snapshot;
+    }
+
+    private void addToSnapshot(Model model) {
+        // copy on write keeps the order, in which the models have been added
+        List<Model> copy = new ArrayList<>(snapshot.size() + 1);
+        copy.addAll(snapshot);
+        copy.add(model);
+        snapshot = Collections.unmodifiableList(copy);
+    }
+
+    private String key(Model model) {
+        String site = model.getSite() != null ? model.getSite().getName() : "";
+        return site + '/' + model.getName();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot.toString();
+    }
+}
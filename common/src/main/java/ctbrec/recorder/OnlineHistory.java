@@ -0,0 +1,210 @@
+package ctbrec.recorder;
+
+import static ctbrec.Model.State.*;
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import ctbrec.Model;
+
+/**
+ * Remembers, when the recorded models have been online, so that the {@link OnlineMonitor} can check models, which
+ * have been offline for days, less often. The hours of the day, in which a model usually starts streaming, are
+ * learned from the transitions from offline to online. Around these hours the model is checked at the normal
+ * interval again.
+ * <p>
+ * The history is saved in the config dir, so it survives restarts.
+ */
+public class OnlineHistory {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(OnlineHistory.class);
+    private static final String FILENAME = "online_history.json";
+    private static final Duration SAVE_INTERVAL = Duration.ofMinutes(5);
+
+    /** The backoff starts after one day offline and doubles every day up to this factor */
+    private static final int MAX_BACKOFF_DAYS = 4;
+    /** How long before a typical start hour the model is checked at the normal interval again */
+    private static final Duration LEAD_TIME = Duration.ofMinutes(15);
+    /** An hour is a typical start hour, if it has at least this many starts and twice the average of all hours */
+    private static final int MIN_STARTS = 2;
+    /** If a model has more starts than this, all counts are halved, so that old habits fade */
+    private static final int MAX_STARTS = 100;
+
+    private File file;
+    private JsonAdapter<Map<String, Entry>> adapter;
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private ZoneId zone = ZoneId.systemDefault();
+    private volatile Instant savedAt = Instant.now();
+
+    public OnlineHistory(File configDir) {
+        file = new File(configDir, FILENAME);
+        adapter = new Moshi.Builder().build().adapter(Types.newParameterizedType(Map.class, String.class, Entry.class));
+    }
+
+    public void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            Map<String, Entry> loaded = adapter.fromJson(new String(Files.readAllBytes(file.toPath()), "utf-8"));
+            if (loaded != null) {
+                for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+                    if (e.getValue().startsByHour == null || e.getValue().startsByHour.length != 24) {
+                        e.getValue().startsByHour = new int[24];
+                    }
+                    entries.put(e.getKey(), e.getValue());
+                }
+            }
+            LOG.debug("Loaded online history of {} models", entries.size());
+        } catch (Exception e) {
+            LOG.error("Couldn't load online history {}", file, e);
+        }
+    }
+
+    public synchronized void save() {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            File tmpFile = new File(file.getParentFile(), FILENAME + ".tmp");
+            Files.write(tmpFile.toPath(), adapter.toJson(entries).getBytes("utf-8"), CREATE, WRITE, TRUNCATE_EXISTING);
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+            }
+            savedAt = Instant.now();
+        } catch (IOException e) {
+            LOG.error("Couldn't save online history {}", file, e);
+        }
+    }
+
+    /**
+     * Records the result of an online check
+     * @param oldState the state of the previous check or UNKNOWN, if the model hasn't been checked since the start
+     * @param newState the state of this check
+     */
+    public void update(Model model, Model.State oldState, Model.State newState, Instant now) {
+        Entry entry = getEntry(model, now);
+        synchronized (entry) {
+            if (isOn(newState)) {
+                entry.lastOnline = now.toEpochMilli();
+                // a model, which is online at the start, didn't necessarily start in this hour
+                if (oldState == OFFLINE) {
+                    addStart(entry, ZonedDateTime.ofInstant(now, zone).getHour());
+                }
+            }
+        }
+        if (Duration.between(savedAt, now).compareTo(SAVE_INTERVAL) > 0) {
+            save();
+        }
+    }
+
+    private void addStart(Entry entry, int hour) {
+        entry.startsByHour[hour]++;
+        if (sum(entry.startsByHour) > MAX_STARTS) {
+            for (int i = 0; i < entry.startsByHour.length; i++) {
+                entry.startsByHour[i] /= 2;
+            }
+        }
+    }
+
+    /**
+     * @param state the current state of the model
+     * @param interval the normal check interval
+     * @param maxInterval the longest interval for models, which have been offline for a long time
+     * @return the time of the next online check for the given model
+     */
+    public Instant nextCheck(Model model, Model.State state, Instant now, Duration interval, Duration maxInterval) {
+        Instant next = now.plus(interval);
+        if (state != OFFLINE) {
+            return next;
+        }
+
+        Entry entry = getEntry(model, now);
+        synchronized (entry) {
+            long offlineSince = Math.max(entry.lastOnline, entry.firstChecked);
+            long daysOffline = Duration.between(Instant.ofEpochMilli(offlineSince), now).toDays();
+            if (daysOffline < 1) {
+                return next;
+            }
+
+            Duration backoff = interval.multipliedBy(1L << Math.min(daysOffline, MAX_BACKOFF_DAYS));
+            if (backoff.compareTo(maxInterval) > 0) {
+                backoff = maxInterval;
+            }
+            Instant backedOff = now.plus(backoff);
+            if (!backedOff.isAfter(next)) {
+                return next;
+            }
+
+            // don't sleep through a typical start time
+            Instant typicalStart = nextTypicalStart(entry, now);
+            if (typicalStart != null && typicalStart.isBefore(backedOff)) {
+                return typicalStart.isAfter(next) ? typicalStart : next;
+            }
+            return backedOff;
+        }
+    }
+
+    /**
+     * @return the beginning of the next window around a typical start hour, which is in the past, if the window has
+     * already begun, or null, if the model has no typical start hour
+     */
+    private Instant nextTypicalStart(Entry entry, Instant now) {
+        int total = sum(entry.startsByHour);
+        ZonedDateTime hour = ZonedDateTime.ofInstant(now, zone).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 0; i <= 24; i++, hour = hour.plusHours(1)) {
+            int starts = entry.startsByHour[hour.getHour()];
+            if (starts >= MIN_STARTS && starts * 24 >= total * 2 && hour.plusHours(1).toInstant().isAfter(now)) {
+                return hour.toInstant().minus(LEAD_TIME);
+            }
+        }
+        return null;
+    }
+
+    private Entry getEntry(Model model, Instant now) {
+        return entries.computeIfAbsent(model.getUrl(), url -> {
+            Entry entry = new Entry();
+            entry.firstChecked = now.toEpochMilli();
+            return entry;
+        });
+    }
+
+    private static boolean isOn(Model.State state) {
+        return state == ONLINE || state == AWAY || state == PRIVATE || state == GROUP;
+    }
+
+    private static int sum(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    public static class Entry {
+        /** epoch millis of the first check of the model */
+        public long firstChecked;
+        /** epoch millis of the last check, which saw the model online */
+        public long lastOnline;
+        /** the number of transitions from offline to online for each hour of the day */
+        public int[] startsByHour = new int[24];
+    }
+}
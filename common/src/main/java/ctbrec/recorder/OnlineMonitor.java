@@ -2,37 +2,70 @@ package ctbrec.recorder;
 
 import static ctbrec.Model.State.*;
 
+import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ctbrec.Config;
 import ctbrec.Model;
+import ctbrec.Settings;
 import ctbrec.event.EventBusHolder;
 import ctbrec.event.ModelIsOnlineEvent;
 import ctbrec.event.ModelStateChangedEvent;
 import ctbrec.io.HttpException;
+import ctbrec.sites.Site;
 
+/**
+ * Checks, which of the recorded models are online. Each model has its own next check time in a priority queue.
+ * Models, which are online or have been online recently, are checked every
+ * {@link Settings#onlineCheckIntervalInSecs}. Models, which have been offline for days, are checked less often, up to
+ * {@link Settings#onlineCheckMaxIntervalInSecs}, except around the hours, in which they usually start, see
+ * {@link OnlineHistory}.
+ * <p>
+ * The due models of one site are checked in parallel by a thread pool of the site, which has
+ * {@link Site#getMaxConcurrentOnlineChecks()} threads. Sites, which can check many models with one request, do so
+ * with {@link Site#checkOnline(java.util.Collection)} before the single checks. The single checks of a site are
+ * limited to {@link Settings#onlineCheckMaxRequestsPerMinute}.
+ */
 public class OnlineMonitor extends Thread {
     private static final transient Logger LOG = LoggerFactory.getLogger(OnlineMonitor.class);
     private static final boolean IGNORE_CACHE = true;
+    private static final long MAX_SLEEP_MILLIS = 1000;
 
     private volatile boolean running = false;
     private Recorder recorder;
+    private OnlineHistory history;
 
-    private Map<Model, Model.State> states = new HashMap<>();
+    private Map<Model, Model.State> states = new ConcurrentHashMap<>();
+    private Map<String, ExecutorService> siteThreads = new ConcurrentHashMap<>();
+    private Map<String, CheckBudget> siteBudgets = new ConcurrentHashMap<>();
+    private PriorityBlockingQueue<ScheduledCheck> queue = new PriorityBlockingQueue<>(64, Comparator.comparing(c -> c.due));
+    /** the models, which are in the queue or are being checked */
+    private Set<Model> scheduled = ConcurrentHashMap.newKeySet();
 
     public OnlineMonitor(Recorder recorder) {
         this.recorder = recorder;
+        history = new OnlineHistory(Config.getInstance().getConfigDir());
         setName("OnlineMonitor");
         setDaemon(true);
     }
@@ -40,65 +73,197 @@ public class OnlineMonitor extends Thread {
     @Override
     public void run() {
         running = true;
+        history.load();
         while (running) {
-            Instant begin = Instant.now();
-            List<Model> models = recorder.getModelsRecording();
-
-            // remove models, which are not recorded anymore
-            for (Iterator<Model> iterator = states.keySet().iterator(); iterator.hasNext();) {
-                Model model = iterator.next();
-                if(!models.contains(model)) {
-                    iterator.remove();
-                }
-            }
+            Set<Model> models = new HashSet<>(recorder.getModelsRecording());
 
-            // update the currently recorded models
+            // remove models, which are not recorded anymore, and schedule new models immediately
+            states.keySet().retainAll(models);
+            Instant now = Instant.now();
             for (Model model : models) {
-                try {
-                    if(model.isOnline(IGNORE_CACHE)) {
-                        EventBusHolder.BUS.post(new ModelIsOnlineEvent(model));
-                    }
-                    Model.State state = model.getOnlineState(false);
-                    Model.State oldState = states.getOrDefault(model, UNKNOWN);
-                    states.put(model, state);
-                    if(state != oldState) {
-                        EventBusHolder.BUS.post(new ModelStateChangedEvent(model, oldState, state));
-                    }
-                } catch (HttpException e) {
-                    LOG.error("Couldn't check if model {} is online. HTTP Response: {} - {}",
-                            model.getName(), e.getResponseCode(), e.getResponseMessage());
-                } catch (SocketTimeoutException e) {
-                    LOG.error("Couldn't check if model {} is online. Request timed out", model.getName());
-                } catch (InterruptedException | InterruptedIOException e) {
-                    if(running) {
-                        LOG.error("Couldn't check if model {} is online", model.getName(), e);
-                    }
-                } catch (Exception e) {
-                    LOG.error("Couldn't check if model {} is online", model.getName(), e);
+                if (scheduled.add(model)) {
+                    queue.add(new ScheduledCheck(model, now));
                 }
             }
-            Instant end = Instant.now();
-            Duration timeCheckTook = Duration.between(begin, end);
-            LOG.trace("Online check for {} models took {} seconds", models.size(), timeCheckTook.getSeconds());
-
-            long sleepTime = Config.getInstance().getSettings().onlineCheckIntervalInSecs;
-            if(timeCheckTook.getSeconds() < sleepTime) {
-                try {
-                    if (running) {
-                        long millis = TimeUnit.SECONDS.toMillis(sleepTime - timeCheckTook.getSeconds());
-                        LOG.trace("Sleeping {}ms", millis);
-                        Thread.sleep(millis);
-                    }
-                } catch (InterruptedException e) {
-                    LOG.trace("Sleep interrupted");
+
+            // check the due models
+            Map<Site, List<Model>> due = new HashMap<>();
+            for (ScheduledCheck head = queue.peek(); head != null && !head.due.isAfter(now); head = queue.peek()) {
+                queue.poll();
+                if (models.contains(head.model)) {
+                    due.computeIfAbsent(head.model.getSite(), s -> new ArrayList<>()).add(head.model);
+                } else {
+                    scheduled.remove(head.model);
                 }
             }
+            for (Entry<Site, List<Model>> entry : due.entrySet()) {
+                LOG.trace("Checking {} models of {}", entry.getValue().size(), getSiteName(entry.getKey()));
+                submit(entry.getKey(), () -> checkSite(entry.getKey(), entry.getValue()));
+            }
+
+            try {
+                ScheduledCheck head = queue.peek();
+                long millis = head != null ? Duration.between(Instant.now(), head.due).toMillis() : MAX_SLEEP_MILLIS;
+                Thread.sleep(Math.max(1, Math.min(millis, MAX_SLEEP_MILLIS)));
+            } catch (InterruptedException e) {
+                LOG.trace("Sleep interrupted");
+            }
         }
         LOG.debug(getName() + " terminated");
     }
 
+    /**
+     * Checks the due models of one site. Runs in a thread of the site.
+     */
+    private void checkSite(Site site, List<Model> models) {
+        Map<Model, Boolean> bulkResults = Collections.emptyMap();
+        if (site != null) {
+            try {
+                bulkResults = site.checkOnline(models);
+            } catch (Exception e) {
+                LOG.warn("Couldn't check the models of {} at once. Checking them one by one", site.getName(), e);
+            }
+        }
+        for (Model model : models) {
+            Boolean online = bulkResults.get(model);
+            if (online != null) {
+                updateBulkCheckedModel(model, online);
+                reschedule(model);
+            } else {
+                submit(site, () -> {
+                    try {
+                        getSiteBudget(site).acquire();
+                        checkModel(model);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        reschedule(model);
+                    }
+                });
+            }
+        }
+    }
+
+    private void checkModel(Model model) {
+        try {
+            updateState(model, model.isOnline(IGNORE_CACHE), false);
+        } catch (HttpException e) {
+            LOG.error("Couldn't check if model {} is online. HTTP Response: {} - {}",
+                    model.getName(), e.getResponseCode(), e.getResponseMessage());
+        } catch (SocketTimeoutException e) {
+            LOG.error("Couldn't check if model {} is online. Request timed out", model.getName());
+        } catch (InterruptedException | InterruptedIOException e) {
+            if(running) {
+                LOG.error("Couldn't check if model {} is online", model.getName(), e);
+            }
+        } catch (Exception e) {
+            LOG.error("Couldn't check if model {} is online", model.getName(), e);
+        }
+    }
+
+    private void updateBulkCheckedModel(Model model, boolean online) {
+        try {
+            // the bulk check has already updated the model, so the state must not be loaded again
+            updateState(model, online, true);
+        } catch (Exception e) {
+            LOG.error("Couldn't determine the state of model {}", model.getName(), e);
+        }
+    }
+
+    private void updateState(Model model, boolean online, boolean failFast) throws IOException, ExecutionException {
+        if(online) {
+            EventBusHolder.BUS.post(new ModelIsOnlineEvent(model));
+        }
+        Model.State state = model.getOnlineState(failFast);
+        Model.State oldState = states.getOrDefault(model, UNKNOWN);
+        states.put(model, state);
+        history.update(model, oldState, state, Instant.now());
+        if(state != oldState) {
+            EventBusHolder.BUS.post(new ModelStateChangedEvent(model, oldState, state));
+        }
+    }
+
+    private void reschedule(Model model) {
+        Settings settings = Config.getInstance().getSettings();
+        Duration interval = Duration.ofSeconds(Math.max(1, settings.onlineCheckIntervalInSecs));
+        Duration maxInterval = Duration.ofSeconds(Math.max(settings.onlineCheckIntervalInSecs, settings.onlineCheckMaxIntervalInSecs));
+        Model.State state = states.getOrDefault(model, UNKNOWN);
+        Instant next = history.nextCheck(model, state, Instant.now(), interval, maxInterval);
+        queue.add(new ScheduledCheck(model, next));
+        LOG.trace("Next online check for {} at {}", model.getName(), next);
+    }
+
+    private void submit(Site site, Runnable task) {
+        try {
+            getSiteThreads(site).submit(task);
+        } catch (RejectedExecutionException e) {
+            if (running) {
+                LOG.error("Couldn't start online check for {}", getSiteName(site), e);
+            }
+        }
+    }
+
+    private ExecutorService getSiteThreads(Site site) {
+        int threads = site != null ? Math.max(1, site.getMaxConcurrentOnlineChecks()) : 1;
+        return siteThreads.computeIfAbsent(getSiteName(site), n -> Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r);
+            t.setName("OnlineCheck " + n);
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    private CheckBudget getSiteBudget(Site site) {
+        return siteBudgets.computeIfAbsent(getSiteName(site), n -> new CheckBudget());
+    }
+
+    private String getSiteName(Site site) {
+        return site != null ? site.getName() : "unknown";
+    }
+
     public void shutdown() {
         running = false;
         interrupt();
+        for (ExecutorService threads : siteThreads.values()) {
+            threads.shutdownNow();
+        }
+        history.save();
+    }
+
+    private static class ScheduledCheck {
+        private Model model;
+        private Instant due;
+
+        private ScheduledCheck(Model model, Instant due) {
+            this.model = model;
+            this.due = due;
+        }
+    }
+
+    /**
+     * Limits the single online checks of one site to {@link Settings#onlineCheckMaxRequestsPerMinute}
+     */
+    private static class CheckBudget {
+        private static final Duration WINDOW = Duration.ofMinutes(1);
+
+        private Instant windowStart = Instant.EPOCH;
+        private int used;
+
+        synchronized void acquire() throws InterruptedException {
+            while (true) {
+                int max = Config.getInstance().getSettings().onlineCheckMaxRequestsPerMinute;
+                Instant now = Instant.now();
+                if (!now.isBefore(windowStart.plus(WINDOW))) {
+                    windowStart = now;
+                    used = 0;
+                }
+                if (max <= 0 || used < max) {
+                    used++;
+                    return;
+                }
+                long millis = Duration.between(now, windowStart.plus(WINDOW)).toMillis();
+                wait(Math.max(1, millis));
+            }
+        }
     }
-}
\ No newline at end of file
+}
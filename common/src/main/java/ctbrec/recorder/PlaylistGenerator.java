@@ -8,6 +8,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -39,10 +40,14 @@ public class PlaylistGenerator {
         LOG.debug("Starting playlist generation for {}", directory);
         // get a list of all ts files and sort them by sequence
         File[] files = directory.listFiles((f) -> f.getName().endsWith(".ts"));
-        if(files == null || files.length == 0) {
+        List<SegmentPack.Entry> packed = SegmentPack.readIndex(directory);
+        if((files == null || files.length == 0) && packed.isEmpty()) {
             LOG.debug("{} is empty. Not going to generate a playlist", directory);
             return null;
         }
+        if(files == null) {
+            files = new File[0];
+        }
 
         Arrays.sort(files, (f1, f2) -> {
             String n1 = f1.getName();
@@ -50,16 +55,22 @@ public class PlaylistGenerator {
             return n1.compareTo(n2);
         });
 
-        // create a track containing all files
+        // segments, which start a new stream after a continued recording, are marked as discontinuity
+        RecordingMetadata metadata = RecordingMetadata.load(directory);
+        List<Integer> discontinuities = metadata != null && metadata.discontinuities != null ? metadata.discontinuities : Collections.emptyList();
+
+        // the segments in the pack have their duration in the index already
         List<TrackData> track = new ArrayList<>();
+        for (SegmentPack.Entry entry : packed) {
+            track.add(createTrack(entry.name, entry.duration, discontinuities));
+        }
+
+        // create a track containing all files
         int total = files.length;
         int done = 0;
         for (File file : files) {
             try {
-                track.add(new TrackData.Builder()
-                        .withUri(file.getName())
-                        .withTrackInfo(new TrackInfo((float) MpegUtil.getFileDuration(file), file.getName()))
-                        .build());
+                track.add(createTrack(file.getName(), (float) MpegUtil.getFileDuration(file), discontinuities));
             } catch(Exception e) {
                 LOG.warn("Couldn't determine duration for {}. Skipping this file.", file.getName());
                 file.renameTo(new File(directory, file.getName()+".corrupt"));
@@ -68,7 +79,46 @@ public class PlaylistGenerator {
             double percentage = (double)done / (double) total;
             updateProgressListeners(percentage);
         }
+        if(!packed.isEmpty() && files.length > 0) {
+            // the recording has been continued with another layout
+            track.sort((t1, t2) -> t1.getUri().compareTo(t2.getUri()));
+        }
+
+        File output = writePlaylist(directory, track);
+        LOG.debug("Finished playlist generation for {}", directory);
+        return output;
+    }
+
+    private TrackData createTrack(String name, float duration, List<Integer> discontinuities) {
+        return new TrackData.Builder()
+                .withUri(name)
+                .withTrackInfo(new TrackInfo(duration, name))
+                .withDiscontinuity(discontinuities.contains(getSegmentNumber(name)))
+                .build();
+    }
+
+    /**
+     * @return the number, which the download put in front of the segment name, or -1
+     */
+    private int getSegmentNumber(String name) {
+        int end = name.indexOf('_');
+        try {
+            return end > 0 ? Integer.parseInt(name.substring(0, end)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
+    /**
+     * Writes a VOD playlist (playlist.m3u8) for the given tracks to the given directory
+     * @param directory the recording directory
+     * @param track the segments of the recording in playback order
+     * @return the playlist file
+     * @throws IOException
+     * @throws ParseException
+     * @throws PlaylistException
+     */
+    public File writePlaylist(File directory, List<TrackData> track) throws IOException, ParseException, PlaylistException {
         // create a media playlist
         float targetDuration = getAvgDuration(track);
         MediaPlaylist playlist = new MediaPlaylist.Builder()
@@ -93,7 +143,6 @@ public class PlaylistGenerator {
                     .withOutputStream(fos)
                     .build();
             writer.write(master);
-            LOG.debug("Finished playlist generation for {}", directory);
         }
         return output;
     }
@@ -138,9 +187,10 @@ public class PlaylistGenerator {
                     return name.endsWith(".ts");
                 }
             });
-            if(segments.length == 0) {
+            int segmentCount = segments.length + SegmentPack.readIndex(recDir).size();
+            if(segmentCount == 0) {
                 throw new InvalidPlaylistException("No segments found. Playlist is empty");
-            } else if(segments.length != playlistSize) {
+            } else if(segmentCount != playlistSize) {
                 throw new InvalidPlaylistException("Playlist size and amount of segments differ");
             } else {
                 LOG.debug("Generated playlist looks good");
@@ -0,0 +1,107 @@
+package ctbrec.recorder;
+
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import ctbrec.Config;
+import ctbrec.Model;
+import ctbrec.io.InstantJsonAdapter;
+import ctbrec.io.ModelJsonAdapter;
+
+/**
+ * The recordings, which haven't been post-processed, when the recorder was shut down.
+ * They are saved in the config dir and post-processed on the next start.
+ */
+public class PostProcessingBacklog {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(PostProcessingBacklog.class);
+    private static final String FILENAME = "postprocessing.json";
+
+    private File file;
+    private JsonAdapter<List<Job>> adapter;
+
+    public PostProcessingBacklog(Config config) {
+        file = new File(config.getConfigDir(), FILENAME);
+        Moshi moshi = new Moshi.Builder()
+                .add(Model.class, new ModelJsonAdapter(config.getSites()))
+                .add(Instant.class, new InstantJsonAdapter())
+                .build();
+        adapter = moshi.adapter(Types.newParameterizedType(List.class, Job.class));
+    }
+
+    /**
+     * Saves the given jobs. An existing backlog is replaced.
+     */
+    public void save(Collection<Job> jobs) throws IOException {
+        if (jobs.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        LOG.info("Saving {} recordings, which still have to be post-processed", jobs.size());
+        Files.createDirectories(file.getParentFile().toPath());
+        File tmpFile = new File(file.getParentFile(), FILENAME + ".tmp");
+        Files.write(tmpFile.toPath(), adapter.toJson(new ArrayList<>(jobs)).getBytes("utf-8"), CREATE, WRITE, TRUNCATE_EXISTING);
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads the saved jobs. They stay in the backlog, until it is replaced by {@link #save(Collection)}, so they
+     * aren't lost, if the recorder crashes before they are done.
+     */
+    public List<Job> load() {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<Job> jobs = adapter.fromJson(new String(Files.readAllBytes(file.toPath()), "utf-8"));
+            return jobs != null ? jobs : Collections.emptyList();
+        } catch (Exception e) {
+            LOG.error("Couldn't load post-processing backlog {}", file, e);
+            return Collections.emptyList();
+        }
+    }
+
+    public static class Job {
+        public String target;
+        public Model model;
+        public Instant startTime;
+
+        public Job() {}
+
+        public Job(File target, Model model, Instant startTime) {
+            this.target = target.getAbsolutePath();
+            this.model = model;
+            this.startTime = startTime;
+        }
+
+        public File getTarget() {
+            return new File(target);
+        }
+
+        @Override
+        public String toString() {
+            return target;
+        }
+    }
+}
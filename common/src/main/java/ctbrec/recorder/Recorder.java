@@ -16,6 +16,11 @@ public interface Recorder {
 
     public void switchStreamSource(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
 
+    /**
+     * Applies the priority of the given model to the recorded model
+     */
+    public void priorityChanged(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
     /**
      * Returns, if a model is in the list of models to record. This does not reflect, if there currently is a recording running. The model might be offline
      * aswell.
@@ -26,8 +31,24 @@ public interface Recorder {
 
     public List<Recording> getRecordings() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
 
+    /**
+     * Returns the recordings, which are recording, generating the playlist or post-processing. Unlike
+     * {@link #getRecordings()}, this doesn't have to look at the finished recordings.
+     */
+    public List<Recording> getRecordingsInProgress() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
+    /**
+     * Returns a page of the recordings, which match the query
+     */
+    public RecordingQuery.Result queryRecordings(RecordingQuery query) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
     public void delete(Recording recording) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
 
+    /**
+     * Deletes the given recordings in the background. The recordings are removed from the listings right away.
+     */
+    public void delete(List<Recording> recordings) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
+
     public void shutdown();
 
     public void suspendRecording(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException;
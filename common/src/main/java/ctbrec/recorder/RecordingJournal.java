@@ -0,0 +1,147 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of the recordings, which have been started and finished. After a crash it tells, which
+ * recordings were in flight, so that only these have to be recovered instead of scanning all recordings.
+ * <p>
+ * Each line is either <code>STARTED &lt;path&gt;</code> or <code>FINISHED &lt;path&gt;</code>. The journal is rewritten
+ * with only the recordings in flight, when it has grown too large.
+ */
+public class RecordingJournal {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RecordingJournal.class);
+    private static final String FILENAME = "recordings.journal";
+    private static final String STARTED = "STARTED";
+    private static final String FINISHED = "FINISHED";
+    static final int MAX_ENTRIES = 1000;
+
+    private File file;
+    private Set<String> inFlight = new LinkedHashSet<>();
+    private int entries = 0;
+    private boolean existed;
+
+    public RecordingJournal(File configDir) {
+        file = new File(configDir, FILENAME);
+        existed = file.exists();
+        if (existed) {
+            load();
+        }
+    }
+
+    private void load() {
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            List<String> lines = new BufferedReader(new StringReader(new String(content, UTF_8))).lines().collect(Collectors.toList());
+            for (String line : lines) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    continue;
+                }
+                String type = line.substring(0, space);
+                String path = line.substring(space + 1);
+                if (type.equals(STARTED)) {
+                    inFlight.add(path);
+                } else if (type.equals(FINISHED)) {
+                    inFlight.remove(path);
+                }
+            }
+            entries = lines.size();
+            if (content.length > 0 && content[content.length - 1] != '\n') {
+                // a crash has left a partial last line. the next entry would be appended to it
+                LOG.info("Recording journal {} ends with an incomplete entry", file);
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.error("Couldn't read recording journal {}", file, e);
+            existed = false;
+        }
+    }
+
+    /**
+     * @return false, if there was no journal, when the recorder was started. In that case
+     * the recordings, which were in flight, are unknown.
+     */
+    public boolean exists() {
+        return existed;
+    }
+
+    /**
+     * @return the recordings, which have been started, but not finished
+     */
+    public synchronized Set<File> getInFlight() {
+        Set<File> files = new LinkedHashSet<>();
+        for (String path : inFlight) {
+            files.add(new File(path));
+        }
+        return Collections.unmodifiableSet(files);
+    }
+
+    public synchronized void started(File recording) {
+        if (inFlight.add(recording.getAbsolutePath())) {
+            append(STARTED, recording);
+        }
+    }
+
+    public synchronized void finished(File recording) {
+        if (inFlight.remove(recording.getAbsolutePath())) {
+            append(FINISHED, recording);
+        }
+    }
+
+    private void append(String type, File recording) {
+        if (entries >= MAX_ENTRIES) {
+            compact();
+        }
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            String line = type + ' ' + recording.getAbsolutePath() + '\n';
+            // DSYNC, so that the entry survives a crash of the system
+            Files.write(file.toPath(), line.getBytes(UTF_8), CREATE, WRITE, APPEND, DSYNC);
+            entries++;
+        } catch (IOException e) {
+            LOG.error("Couldn't write to recording journal {}", file, e);
+        }
+    }
+
+    /**
+     * Rewrites the journal, so that it only contains the recordings in flight
+     */
+    public synchronized void compact() {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            StringBuilder sb = new StringBuilder();
+            for (String path : inFlight) {
+                sb.append(STARTED).append(' ').append(path).append('\n');
+            }
+            File tmpFile = new File(file.getParentFile(), FILENAME + ".tmp");
+            Files.write(tmpFile.toPath(), sb.toString().getBytes(UTF_8), CREATE, WRITE, TRUNCATE_EXISTING, SYNC);
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+            }
+            entries = inFlight.size();
+        } catch (IOException e) {
+            LOG.error("Couldn't compact recording journal {}", file, e);
+        }
+    }
+}
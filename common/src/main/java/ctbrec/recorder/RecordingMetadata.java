@@ -0,0 +1,133 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardCopyOption.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+/**
+ * The size and duration of a recording, which are counted by the download, while it writes the segments.
+ * They are saved next to the recording, so that the recordings can be listed without looking at the segments.
+ * The site of the model is saved, too, because the directory structure only contains the model name. If a recording
+ * has been continued after a restart of the stream, the numbers of the first segments after the gaps are saved, so
+ * that the {@link PlaylistGenerator} can mark the discontinuities.
+ * <p>
+ * For a recording directory the file is <code>metadata.json</code> in the directory, for a recording file it is
+ * the file name with <code>.json</code> appended.
+ */
+public class RecordingMetadata {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RecordingMetadata.class);
+    private static final String FILENAME = "metadata.json";
+    private static final JsonAdapter<RecordingMetadata> ADAPTER = new Moshi.Builder().build().adapter(RecordingMetadata.class);
+
+    public long sizeInByte;
+    public double durationInSeconds;
+    public String siteName;
+    /** the numbers of the segments, which start a new stream, or null */
+    public List<Integer> discontinuities;
+
+    public RecordingMetadata() {}
+
+    public RecordingMetadata(RecordingMetadata other) {
+        sizeInByte = other.sizeInByte;
+        durationInSeconds = other.durationInSeconds;
+        siteName = other.siteName;
+        if (other.discontinuities != null) {
+            discontinuities = new ArrayList<>(other.discontinuities);
+        }
+    }
+
+    public void addDiscontinuity(int segment) {
+        if (discontinuities == null) {
+            discontinuities = new ArrayList<>();
+        }
+        discontinuities.add(segment);
+    }
+
+    /**
+     * @return the metadata file of the given recording directory or file
+     */
+    public static File getFile(File recording) {
+        if (recording.isDirectory()) {
+            return new File(recording, FILENAME);
+        } else {
+            return new File(recording.getParentFile(), recording.getName() + ".json");
+        }
+    }
+
+    /**
+     * @return the metadata of the given recording or null, if there is none
+     */
+    public static RecordingMetadata load(File recording) {
+        File file = getFile(recording);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return ADAPTER.fromJson(new String(Files.readAllBytes(file.toPath()), UTF_8));
+        } catch (Exception e) {
+            LOG.debug("Couldn't read recording metadata {}", file, e);
+            return null;
+        }
+    }
+
+    public void save(File recording) {
+        File file = getFile(recording);
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.write(tmpFile.toPath(), ADAPTER.toJson(this).getBytes(UTF_8));
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't save recording metadata {}", file, e);
+        }
+    }
+
+    /**
+     * Measures the size of the recording once, after the post-processing has changed its files, e.g. by
+     * concatenating the segments. The duration is kept.
+     */
+    public static void updateSize(File recording) {
+        RecordingMetadata metadata = load(recording);
+        if (metadata == null) {
+            return;
+        }
+        long size = 0;
+        if (recording.isDirectory()) {
+            File[] files = recording.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().startsWith(FILENAME)) {
+                        size += file.length();
+                    }
+                }
+            }
+        } else {
+            size = recording.length();
+        }
+        metadata.sizeInByte = size;
+        metadata.save(recording);
+    }
+
+    /**
+     * Deletes the metadata of a recording file. The metadata of a recording directory is deleted together with the directory.
+     */
+    public static void delete(File recording) throws IOException {
+        Files.deleteIfExists(getFile(recording).toPath());
+    }
+}
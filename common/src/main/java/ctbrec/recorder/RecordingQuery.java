@@ -0,0 +1,121 @@
+package ctbrec.recorder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import ctbrec.Recording;
+import ctbrec.Recording.State;
+
+/**
+ * Selects a page of recordings. All criteria are optional, an empty query returns all recordings sorted by date,
+ * newest first.
+ */
+public class RecordingQuery {
+
+    public static enum SortField {
+        MODEL_NAME,
+        SITE_NAME,
+        START_DATE,
+        STATUS,
+        SIZE,
+        DURATION,
+        BITRATE
+    }
+
+    /** part of the model name, case is ignored */
+    public String modelName;
+    public String siteName;
+    public List<State> states;
+    /** only recordings, which have been started at or after this time */
+    public Instant from;
+    /** only recordings, which have been started before this time */
+    public Instant to;
+    public SortField sortBy = SortField.START_DATE;
+    public boolean ascending = false;
+    public int offset = 0;
+    /** the maximum number of recordings to return. 0 means no limit */
+    public int limit = 0;
+    /** the properties of the recordings, which should be returned. null means all */
+    public List<String> fields;
+
+    public boolean matches(Recording rec) {
+        if (modelName != null && !modelName.isEmpty()) {
+            if (rec.getModelName() == null || !rec.getModelName().toLowerCase().contains(modelName.toLowerCase())) {
+                return false;
+            }
+        }
+        if (siteName != null && !siteName.isEmpty() && !siteName.equalsIgnoreCase(rec.getSiteName())) {
+            return false;
+        }
+        if (states != null && !states.isEmpty() && !states.contains(rec.getStatus())) {
+            return false;
+        }
+        Instant start = rec.getStartDate();
+        if (from != null && (start == null || start.isBefore(from))) {
+            return false;
+        }
+        if (to != null && (start == null || !start.isBefore(to))) {
+            return false;
+        }
+        return true;
+    }
+
+    public Comparator<Recording> getComparator() {
+        Comparator<Recording> comparator;
+        SortField field = sortBy != null ? sortBy : SortField.START_DATE;
+        switch (field) {
+        case MODEL_NAME:
+            comparator = Comparator.comparing(Recording::getModelName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            break;
+        case SITE_NAME:
+            comparator = Comparator.comparing(Recording::getSiteName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            break;
+        case STATUS:
+            comparator = Comparator.comparing(Recording::getStatus, Comparator.nullsFirst(Comparator.naturalOrder()));
+            break;
+        case SIZE:
+            comparator = Comparator.comparingLong(Recording::getSizeInByte);
+            break;
+        case DURATION:
+            comparator = Comparator.comparingDouble(Recording::getDurationInSeconds);
+            break;
+        case BITRATE:
+            comparator = Comparator.comparingLong(Recording::getBitrate);
+            break;
+        case START_DATE:
+        default:
+            comparator = Comparator.comparing(Recording::getStartDate, Comparator.nullsFirst(Comparator.naturalOrder()));
+            break;
+        }
+        // make the order stable, so that the pages don't overlap
+        comparator = comparator.thenComparing(Recording::getPath, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return ascending ? comparator : comparator.reversed();
+    }
+
+    /**
+     * Filters, sorts and pages the given recordings
+     */
+    public Result execute(Collection<Recording> recordings) {
+        List<Recording> matching = recordings.stream()
+                .filter(this::matches)
+                .sorted(getComparator())
+                .collect(Collectors.toList());
+        Result result = new Result();
+        result.total = matching.size();
+        int fromIndex = Math.min(Math.max(0, offset), matching.size());
+        // fromIndex + limit would overflow for a large limit
+        int toIndex = limit > 0 ? fromIndex + Math.min(matching.size() - fromIndex, limit) : matching.size();
+        result.recordings = new ArrayList<>(matching.subList(fromIndex, toIndex));
+        return result;
+    }
+
+    public static class Result {
+        /** the number of recordings, which match the query, without paging */
+        public int total;
+        public List<Recording> recordings;
+    }
+}
@@ -0,0 +1,175 @@
+package ctbrec.recorder;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Config;
+
+/**
+ * Creates the threads, which are used by the recordings (download loops, segment merger, streamer and segment downloads).
+ * <p>
+ * All recording threads live in the thread group "Recordings". The segments of all recordings are downloaded
+ * by one shared pool. It has {@link ctbrec.Settings#segmentDownloadThreads} threads, but at least one thread for each
+ * running recording, see {@link #addSegmentDownloader()}. If
+ * {@link ctbrec.Settings#useVirtualThreads} is enabled and the JVM supports virtual threads (Java 21+),
+ * virtual threads are used instead, because the recording threads spend most of their time waiting for I/O.
+ */
+public class RecordingThreads {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RecordingThreads.class);
+
+    private static final ThreadGroup GROUP = new ThreadGroup("Recordings");
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    /** all threads created by {@link #newThread(String, Runnable)}. Virtual threads don't belong to {@link #GROUP} */
+    private static final Set<Thread> THREADS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static ThreadPoolExecutor segmentDownloadPool;
+    private static int segmentDownloaders = 0;
+    private static Boolean virtualThreads;
+
+    private RecordingThreads() {}
+
+    /**
+     * Creates a new, unstarted daemon thread for a recording
+     */
+    public static Thread newThread(String name, Runnable runnable) {
+        if (useVirtualThreads()) {
+            try {
+                Thread thread = newVirtualThread(runnable);
+                thread.setName(name);
+                THREADS.add(thread);
+                return thread;
+            } catch (Exception e) {
+                LOG.warn("Couldn't create virtual thread. Falling back to platform threads", e);
+                virtualThreads = false;
+            }
+        }
+        Thread thread = new Thread(GROUP, runnable, name);
+        thread.setDaemon(true);
+        THREADS.add(thread);
+        return thread;
+    }
+
+    /**
+     * @param namePrefix the name of the threads, a counter is appended to it
+     * @return a ThreadFactory, which creates recording threads
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        return r -> newThread(namePrefix + '-' + THREAD_COUNTER.incrementAndGet(), r);
+    }
+
+    /**
+     * @return the pool, which is shared by all recordings to download segments
+     */
+    public static synchronized ExecutorService getSegmentDownloadPool() {
+        if (segmentDownloadPool == null || segmentDownloadPool.isShutdown()) {
+            int threads = getSegmentDownloadThreads();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                    threadFactory("SegmentDownload"));
+            pool.allowCoreThreadTimeOut(true);
+            segmentDownloadPool = pool;
+        }
+        return segmentDownloadPool;
+    }
+
+    /**
+     * Registers a recording, which downloads segments with the shared pool. The pool grows, so that each
+     * recording has at least one thread.
+     */
+    public static synchronized void addSegmentDownloader() {
+        segmentDownloaders++;
+        resizeSegmentDownloadPool();
+    }
+
+    /**
+     * Unregisters a recording, which has been registered with {@link #addSegmentDownloader()}
+     */
+    public static synchronized void removeSegmentDownloader() {
+        segmentDownloaders = Math.max(0, segmentDownloaders - 1);
+        resizeSegmentDownloadPool();
+    }
+
+    private static void resizeSegmentDownloadPool() {
+        if (segmentDownloadPool == null || segmentDownloadPool.isShutdown()) {
+            return;
+        }
+        int threads = getSegmentDownloadThreads();
+        // the maximum has to be at least the core size, so the order depends on the direction
+        if (threads > segmentDownloadPool.getMaximumPoolSize()) {
+            segmentDownloadPool.setMaximumPoolSize(threads);
+            segmentDownloadPool.setCorePoolSize(threads);
+        } else if (threads < segmentDownloadPool.getMaximumPoolSize()) {
+            segmentDownloadPool.setCorePoolSize(threads);
+            segmentDownloadPool.setMaximumPoolSize(threads);
+        }
+    }
+
+    private static int getSegmentDownloadThreads() {
+        return Math.max(Math.max(1, Config.getInstance().getSettings().segmentDownloadThreads), segmentDownloaders);
+    }
+
+    /**
+     * Stops accepting new segment downloads. Segments, which have been submitted already, are still downloaded.
+     */
+    public static synchronized void shutdown() {
+        if (segmentDownloadPool != null) {
+            segmentDownloadPool.shutdown();
+        }
+    }
+
+    /**
+     * Cancels all segment downloads and interrupts all recording threads. Used, if the recordings didn't stop in time.
+     */
+    public static synchronized void shutdownNow() {
+        if (segmentDownloadPool != null) {
+            segmentDownloadPool.shutdownNow();
+        }
+        List<Thread> threads;
+        synchronized (THREADS) {
+            threads = new ArrayList<>(THREADS);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private static boolean useVirtualThreads() {
+        if (virtualThreads == null) {
+            boolean enabled = Config.getInstance().getSettings().useVirtualThreads;
+            virtualThreads = enabled && virtualThreadsSupported();
+            if (enabled && !virtualThreads) {
+                LOG.info("Virtual threads are not supported by this JVM. Using platform threads");
+            }
+        }
+        return virtualThreads;
+    }
+
+    private static boolean virtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Thread newVirtualThread(Runnable runnable) throws Exception {
+        // Thread.ofVirtual().unstarted(runnable). called by reflection, because we still have to run on Java 8
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        return (Thread) unstarted.invoke(builder, runnable);
+    }
+}
@@ -0,0 +1,403 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardCopyOption.*;
+import static java.nio.file.StandardOpenOption.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import ctbrec.Config;
+import ctbrec.Recording;
+import ctbrec.io.InstantJsonAdapter;
+
+/**
+ * Keeps the recordings of the {@link StoragePool} in memory, so that listing them doesn't require a scan of the
+ * recordings dirs. The catalog is updated by the recorder for its own recordings and by a {@link WatchService}
+ * for changes made by someone else. It is saved in the config dir, so that it is available right after a restart.
+ * A saved catalog is reconciled with the recordings dirs in the background, which only lists the directories
+ * and doesn't look at the segments of known recordings again.
+ */
+public class RecordingsCatalog {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(RecordingsCatalog.class);
+    private static final String FILENAME = "recordings.json";
+    private static final String DATE_FORMAT = "yyyy-MM-dd_HH-mm";
+    private static final Pattern MERGED_RECORDING = Pattern.compile(".*?_\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}\\.ts");
+    private static final long SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private Config config;
+    private StoragePool storagePool;
+    private Predicate<File> excluded;
+    private File file;
+    private JsonAdapter<Map<String, Recording>> adapter;
+    private Map<String, Recording> recordings = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+    private long lastSave = System.currentTimeMillis();
+    private WatchService watchService;
+    private Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private Thread watcher;
+    private volatile boolean running = true;
+
+    /**
+     * @param excluded recordings, which must not be listed, e.g. because they are being deleted
+     */
+    public RecordingsCatalog(Config config, StoragePool storagePool, Predicate<File> excluded) {
+        this.config = config;
+        this.storagePool = storagePool;
+        this.excluded = excluded;
+        file = new File(config.getConfigDir(), FILENAME);
+        Moshi moshi = new Moshi.Builder().add(Instant.class, new InstantJsonAdapter()).build();
+        adapter = moshi.adapter(Types.newParameterizedType(Map.class, String.class, Recording.class));
+    }
+
+    /**
+     * Loads the saved catalog and starts watching the recordings dirs. If there is no saved catalog,
+     * the recordings dirs are scanned before this method returns.
+     */
+    public void start() {
+        boolean loaded = load();
+        if (!loaded) {
+            LOG.info("No recordings catalog found. Scanning recordings dirs");
+            scan(false);
+        }
+        watcher = new Thread(() -> {
+            if (loaded) {
+                scan(true);
+            }
+            watch();
+        });
+        watcher.setName("RecordingsCatalog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private boolean load() {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            Map<String, Recording> saved = adapter.fromJson(new String(Files.readAllBytes(file.toPath()), UTF_8));
+            if (saved == null) {
+                return false;
+            }
+            recordings.putAll(saved);
+            LOG.debug("Loaded {} recordings from catalog", recordings.size());
+            return true;
+        } catch (Exception e) {
+            LOG.error("Couldn't load recordings catalog {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the catalog, if it has changed
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        lastSave = System.currentTimeMillis();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            File tmpFile = new File(file.getParentFile(), FILENAME + ".tmp");
+            Files.write(tmpFile.toPath(), adapter.toJson(new HashMap<>(recordings)).getBytes(UTF_8), CREATE, WRITE, TRUNCATE_EXISTING);
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            LOG.error("Couldn't save recordings catalog {}", file, e);
+        }
+    }
+
+    /**
+     * @return a copy of all recordings in the catalog by their absolute path, so that the caller doesn't have to
+     * resolve the paths on the volumes again. The status of the copies still has to be determined.
+     */
+    public Map<File, Recording> getRecordingsByPath() {
+        Map<File, Recording> result = new HashMap<>(recordings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Recording> entry : recordings.entrySet()) {
+            result.put(new File(entry.getKey()), new Recording(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the recording at the given absolute path or null, if it is not in the catalog
+     */
+    public Recording get(File path) {
+        Recording rec = recordings.get(path.getAbsolutePath());
+        return rec != null ? new Recording(rec) : null;
+    }
+
+    /**
+     * Reads the recording at the given path again. If it doesn't exist anymore, it is removed from the catalog.
+     * @param path the directory of the recording in server mode or the file of the recording in client mode
+     */
+    public void update(File path) {
+        Recording rec = read(path);
+        if (rec != null) {
+            put(path, rec);
+        } else {
+            remove(path);
+        }
+    }
+
+    /**
+     * Removes the recording at the given path and all recordings below it from the catalog
+     */
+    public void remove(File path) {
+        String key = path.getAbsolutePath();
+        String prefix = key + File.separator;
+        boolean removed = recordings.keySet().removeIf(k -> k.equals(key) || k.startsWith(prefix));
+        dirty |= removed;
+    }
+
+    private void put(File path, Recording rec) {
+        Recording old = recordings.put(path.getAbsolutePath(), rec);
+        if (old == null || old.getSizeInByte() != rec.getSizeInByte() || old.getDurationInSeconds() != rec.getDurationInSeconds()
+                || old.hasPlaylist() != rec.hasPlaylist()) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Scans all volumes and replaces the content of the catalog
+     * @param reuseFinished don't read recordings with a playlist again, if they are already in the catalog
+     */
+    private void scan(boolean reuseFinished) {
+        Map<String, Recording> found = new HashMap<>();
+        for (File volume : storagePool.getVolumes()) {
+            scan(volume, 0, found, reuseFinished);
+        }
+        boolean changed = recordings.keySet().retainAll(found.keySet());
+        for (Map.Entry<String, Recording> entry : found.entrySet()) {
+            Recording old = recordings.put(entry.getKey(), entry.getValue());
+            changed |= old != entry.getValue();
+        }
+        dirty |= changed;
+        LOG.debug("Recordings catalog contains {} recordings", recordings.size());
+    }
+
+    private void scan(File dir, int depth, Map<String, Recording> found, boolean reuseFinished) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        if (depth <= getMaxWatchDepth()) {
+            register(dir);
+        }
+        for (File f : files) {
+            if (isRecording(f, depth + 1)) {
+                Recording known = recordings.get(f.getAbsolutePath());
+                Recording rec = reuseFinished && known != null && isFinished(known) ? known : read(f);
+                if (rec != null) {
+                    found.put(f.getAbsolutePath(), rec);
+                }
+            } else if (f.isDirectory() && (!Config.isServerMode() || depth == 0)) {
+                scan(f, depth + 1, found, reuseFinished);
+            }
+        }
+    }
+
+    private boolean isFinished(Recording rec) {
+        return !Config.isServerMode() || rec.hasPlaylist();
+    }
+
+    /**
+     * In server mode the recordings are the directories model/date. In client mode all files, which match the file name
+     * pattern of the merged recordings, are recordings, no matter, how deep they are.
+     */
+    private boolean isRecording(File f, int depth) {
+        if (Config.isServerMode()) {
+            return depth == 2 && f.getName().length() == DATE_FORMAT.length();
+        } else {
+            return MERGED_RECORDING.matcher(f.getName()).matches();
+        }
+    }
+
+    /**
+     * In server mode the volumes and model dirs are watched. In client mode the recordings can be
+     * in model/date sub-directories, so one more level is watched.
+     */
+    private int getMaxWatchDepth() {
+        return Config.isServerMode() ? 1 : 2;
+    }
+
+    private Recording read(File path) {
+        if (excluded.test(path) || !path.exists()) {
+            return null;
+        }
+        try {
+            SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
+            Recording recording = new Recording();
+            RecordingMetadata metadata = RecordingMetadata.load(path);
+            if (metadata != null) {
+                recording.setSiteName(metadata.siteName);
+            }
+            if (Config.isServerMode()) {
+                Date startDate = sdf.parse(path.getName());
+                recording.setModelName(path.getParentFile().getName());
+                recording.setStartDate(Instant.ofEpochMilli(startDate.getTime()));
+                recording.setPath(recording.getModelName() + "/" + path.getName());
+                if (metadata != null) {
+                    // the download has counted the segments for us
+                    recording.setSizeInByte(metadata.sizeInByte);
+                    recording.setDurationInSeconds(metadata.durationInSeconds);
+                } else {
+                    File[] segments = path.listFiles();
+                    // ignore empty directories
+                    if (segments == null || segments.length == 0) {
+                        return null;
+                    }
+                    long size = 0;
+                    for (File segment : segments) {
+                        size += segment.length();
+                    }
+                    recording.setSizeInByte(size);
+                }
+                recording.setHasPlaylist(new File(path, "playlist.m3u8").exists());
+            } else {
+                String filename = path.getName();
+                String dateString = filename.substring(filename.length() - 3 - DATE_FORMAT.length(), filename.length() - 3);
+                Date startDate = sdf.parse(dateString);
+                recording.setModelName(filename.substring(0, filename.length() - 4 - DATE_FORMAT.length()));
+                recording.setStartDate(Instant.ofEpochMilli(startDate.getTime()));
+                recording.setPath(storagePool.relativize(path));
+                recording.setSizeInByte(path.length());
+                if (metadata != null) {
+                    recording.setDurationInSeconds(metadata.durationInSeconds);
+                }
+            }
+            return recording;
+        } catch (Exception e) {
+            LOG.debug("Ignoring {} - {}", path.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void register(File dir) {
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+            }
+            Path path = dir.toPath();
+            if (!watchedDirs.containsValue(path)) {
+                WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watchedDirs.put(key, path);
+            }
+        } catch (IOException e) {
+            LOG.warn("Couldn't watch {} for changes", dir, e);
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            try {
+                if (watchService == null) {
+                    Thread.sleep(1000);
+                } else {
+                    WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                    if (key != null) {
+                        handleEvents(key);
+                    }
+                }
+                if (System.currentTimeMillis() - lastSave > SAVE_INTERVAL) {
+                    save();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                LOG.error("Error while watching the recordings dirs", e);
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                LOG.debug("Too many changes in the recordings dirs. Scanning all of them");
+                scan(true);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            File changed = dir.resolve((Path) event.context()).toFile();
+            if (event.kind() == ENTRY_DELETE) {
+                remove(changed);
+            } else {
+                int depth = getDepth(changed);
+                if (depth < 0) {
+                    continue;
+                }
+                if (isRecording(changed, depth)) {
+                    update(changed);
+                } else if (changed.isDirectory() && depth <= getMaxWatchDepth()) {
+                    // a new model dir. pick up everything, which has been created before we watch it
+                    Map<String, Recording> found = new HashMap<>();
+                    scan(changed, depth, found, false);
+                    for (Map.Entry<String, Recording> entry : found.entrySet()) {
+                        put(new File(entry.getKey()), entry.getValue());
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    private int getDepth(File f) {
+        File volume = storagePool.getVolume(f);
+        if (volume == null) {
+            return -1;
+        }
+        return f.toPath().getNameCount() - volume.getAbsoluteFile().toPath().getNameCount();
+    }
+
+    public void shutdown() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            LOG.debug("Couldn't close watch service", e);
+        }
+        save();
+    }
+}
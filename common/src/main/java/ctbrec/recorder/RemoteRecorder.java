@@ -1,5 +1,7 @@
 package ctbrec.recorder;
 
+import static ctbrec.Recording.State.*;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -7,9 +9,13 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 import org.json.JSONObject;
@@ -51,10 +57,15 @@ public class RemoteRecorder implements Recorder {
     private JsonAdapter<ModelListResponse> modelListResponseAdapter = moshi.adapter(ModelListResponse.class);
     private JsonAdapter<RecordingListResponse> recordingListResponseAdapter = moshi.adapter(RecordingListResponse.class);
     private JsonAdapter<ModelRequest> modelRequestAdapter = moshi.adapter(ModelRequest.class);
+    private JsonAdapter<RecordingsRequest> recordingsRequestAdapter = moshi.adapter(RecordingsRequest.class);
+    private JsonAdapter<DeleteRequest> deleteRequestAdapter = moshi.adapter(DeleteRequest.class);
+    private JsonAdapter<ChangesResponse> changesResponseAdapter = moshi.adapter(ChangesResponse.class);
+    private JsonAdapter<Recording> recordingAdapter = moshi.adapter(Recording.class);
+    private JsonAdapter<Model> modelAdapter = moshi.adapter(Model.class);
 
     private List<Model> models = Collections.emptyList();
     private List<Model> onlineModels = Collections.emptyList();
-    private List<Recording> recordings = Collections.emptyList();
+    private volatile Map<String, Recording> recordings = new ConcurrentHashMap<>();
     private List<Site> sites;
     private long spaceTotal = -1;
     private long spaceFree = -1;
@@ -152,6 +163,11 @@ public class RemoteRecorder implements Recorder {
 
     private class SyncThread extends Thread {
         private volatile boolean running = false;
+        private boolean changeFeedSupported = true;
+        private String changeLogId;
+        private long changeLogVersion = 0;
+        private Map<String, Model> modelsByUrl = new HashMap<>();
+        private Map<String, Model> onlineModelsByUrl = new HashMap<>();
 
         public SyncThread() {
             setName("RemoteRecorder SyncThread");
@@ -162,14 +178,139 @@ public class RemoteRecorder implements Recorder {
         public void run() {
             running = true;
             while(running) {
-                syncModels();
-                syncOnlineModels();
-                syncSpace();
-                syncRecordings();
+                if (changeFeedSupported) {
+                    syncChanges();
+                } else {
+                    syncModels();
+                    syncOnlineModels();
+                    syncSpace();
+                    syncRecordings();
+                }
                 sleep();
             }
         }
 
+        /**
+         * Fetches the changes since the last sync from the server's change log. Falls back to fetching
+         * everything, if the server doesn't support the change log.
+         */
+        private void syncChanges() {
+            try {
+                JSONObject msgObj = new JSONObject();
+                msgObj.put("action", "changes");
+                msgObj.put("id", changeLogId);
+                msgObj.put("version", changeLogVersion);
+                String msg = msgObj.toString();
+                RequestBody body = RequestBody.create(JSON, msg);
+                Request.Builder builder = new Request.Builder()
+                        .url("http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/rec")
+                        .post(body);
+                addHmacIfNeeded(msg, builder);
+                Request request = builder.build();
+                try (Response response = client.execute(request)) {
+                    String json = response.body().string();
+                    if (response.code() == 400) {
+                        LOG.info("Server doesn't support the change log. Falling back to full sync");
+                        changeFeedSupported = false;
+                    } else if (response.isSuccessful()) {
+                        ChangesResponse resp = changesResponseAdapter.fromJson(json);
+                        if (resp.status.equals("success")) {
+                            applyChanges(resp.changes);
+                            lastSync = Instant.now();
+                        } else {
+                            LOG.error("Server returned error: {} - {}", resp.status, resp.msg);
+                        }
+                    } else {
+                        LOG.error("Couldn't synchronize with server. HTTP status: {} - {}", response.code(), json);
+                    }
+                }
+            } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e) {
+                LOG.error("Couldn't synchronize with server", e);
+            }
+        }
+
+        private void applyChanges(ChangeLog.ChangeSet changeSet) {
+            Map<String, Recording> previousRecordings = recordings;
+            if (changeSet.full) {
+                modelsByUrl = new HashMap<>();
+                onlineModelsByUrl = new HashMap<>();
+                recordings = new ConcurrentHashMap<>();
+            }
+            boolean modelsChanged = changeSet.full;
+            boolean onlineModelsChanged = changeSet.full;
+            for (ChangeLog.Change change : changeSet.changes) {
+                boolean delete = ChangeLog.DELETE.equals(change.op);
+                switch (change.type) {
+                case "model":
+                    modelsChanged = true;
+                    if (delete) {
+                        modelsByUrl.remove(change.key);
+                    } else {
+                        modelsByUrl.put(change.key, toModel(change.value));
+                    }
+                    break;
+                case "onlineModel":
+                    onlineModelsChanged = true;
+                    if (delete) {
+                        onlineModelsByUrl.remove(change.key);
+                    } else {
+                        onlineModelsByUrl.put(change.key, toModel(change.value));
+                    }
+                    break;
+                case "recording":
+                    // the server only publishes the recordings in progress. a recording, which disappears, has been finished
+                    Recording old = previousRecordings.get(change.key);
+                    if (delete) {
+                        if (recordings.remove(change.key) != null) {
+                            fireRecordingFinished(old);
+                        }
+                    } else {
+                        Recording recording = recordingAdapter.fromJsonValue(change.value);
+                        recordings.put(change.key, recording);
+                        if (old != null && old.getStatus() != recording.getStatus()) {
+                            fireRecordingStateChanged(recording);
+                        }
+                    }
+                    break;
+                case "space":
+                    if (!delete) {
+                        Map<?, ?> space = (Map<?, ?>) change.value;
+                        spaceTotal = ((Number) space.get("spaceTotal")).longValue();
+                        spaceFree = ((Number) space.get("spaceFree")).longValue();
+                    }
+                    break;
+                default:
+                    LOG.debug("Ignoring change of unknown type {}", change.type);
+                    break;
+                }
+            }
+            if (changeSet.full) {
+                for (Recording recording : previousRecordings.values()) {
+                    if (!recordings.containsKey(recording.getPath())) {
+                        fireRecordingFinished(recording);
+                    }
+                }
+            }
+            if (modelsChanged) {
+                models = new ArrayList<>(modelsByUrl.values());
+            }
+            if (onlineModelsChanged) {
+                onlineModels = new ArrayList<>(onlineModelsByUrl.values());
+            }
+            changeLogId = changeSet.id;
+            changeLogVersion = changeSet.version;
+        }
+
+        private Model toModel(Object value) {
+            Model model = modelAdapter.fromJsonValue(value);
+            for (Site site : sites) {
+                if (site.isSiteForModel(model)) {
+                    model.setSite(site);
+                }
+            }
+            return model;
+        }
+
         private void syncSpace() {
             try {
                 String msg = "{\"action\": \"space\"}";
@@ -263,49 +404,49 @@ public class RemoteRecorder implements Recorder {
             }
         }
 
+        /**
+         * Only fetches the recordings, which are in progress. The finished ones don't change anymore.
+         * If a recording is not in progress anymore, it has been finished.
+         */
         private void syncRecordings() {
             try {
-                String msg = "{\"action\": \"recordings\"}";
-                RequestBody body = RequestBody.create(JSON, msg);
-                Request.Builder builder = new Request.Builder()
-                        .url("http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/rec")
-                        .post(body);
-                addHmacIfNeeded(msg, builder);
-                Request request = builder.build();
-                try (Response response = client.execute(request)) {
-                    String json = response.body().string();
-                    if (response.isSuccessful()) {
-                        RecordingListResponse resp = recordingListResponseAdapter.fromJson(json);
-                        if (resp.status.equals("success")) {
-                            List<Recording> newRecordings = resp.recordings;
-                            // fire changed events
-                            for (Iterator<Recording> iterator = recordings.iterator(); iterator.hasNext();) {
-                                Recording recording = iterator.next();
-                                if(newRecordings.contains(recording)) {
-                                    int idx = newRecordings.indexOf(recording);
-                                    Recording newRecording = newRecordings.get(idx);
-                                    if(newRecording.getStatus() != recording.getStatus()) {
-                                        File file = new File(recording.getPath());
-                                        Model m = new UnknownModel();
-                                        m.setName(newRecording.getModelName());
-                                        RecordingStateChangedEvent evt = new RecordingStateChangedEvent(file, newRecording.getStatus(), m, recording.getStartDate());
-                                        EventBusHolder.BUS.post(evt);
-                                    }
-                                }
-                            }
-                            recordings = newRecordings;
-                        } else {
-                            LOG.error("Server returned error: {} - {}", resp.status, resp.msg);
-                        }
-                    } else {
-                        LOG.error("Couldn't synchronize with server. HTTP status: {} - {}", response.code(), json);
+                RecordingQuery query = new RecordingQuery();
+                query.states = Arrays.asList(RECORDING, GENERATING_PLAYLIST, POST_PROCESSING);
+                Map<String, Recording> newRecordings = new ConcurrentHashMap<>();
+                for (Recording newRecording : queryRecordings(query).recordings) {
+                    newRecordings.put(newRecording.getPath(), newRecording);
+                }
+                // fire changed events
+                for (Recording recording : recordings.values()) {
+                    Recording newRecording = newRecordings.get(recording.getPath());
+                    if (newRecording == null) {
+                        fireRecordingFinished(recording);
+                    } else if (newRecording.getStatus() != recording.getStatus()) {
+                        fireRecordingStateChanged(newRecording);
                     }
                 }
+                recordings = newRecordings;
             } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | IllegalStateException e) {
                 LOG.error("Couldn't synchronize with server", e);
             }
         }
 
+        private void fireRecordingFinished(Recording recording) {
+            if (recording.getStatus() != FINISHED) {
+                Recording finished = new Recording(recording);
+                finished.setStatus(FINISHED);
+                fireRecordingStateChanged(finished);
+            }
+        }
+
+        private void fireRecordingStateChanged(Recording recording) {
+            File file = new File(recording.getPath());
+            Model m = new UnknownModel();
+            m.setName(recording.getModelName());
+            RecordingStateChangedEvent evt = new RecordingStateChangedEvent(file, recording.getStatus(), m, recording.getStartDate());
+            EventBusHolder.BUS.post(evt);
+        }
+
         private void sleep() {
             try {
                 Thread.sleep(2000);
@@ -329,17 +470,87 @@ public class RemoteRecorder implements Recorder {
     private static class RecordingListResponse {
         public String status;
         public String msg;
+        public int total;
         public List<Recording> recordings;
     }
 
+    private static class ChangesResponse {
+        public String status;
+        public String msg;
+        public ChangeLog.ChangeSet changes;
+    }
+
+    private static class RecordingsRequest {
+        public String action = "recordings";
+        public RecordingQuery query;
+    }
+
+    /**
+     * Queries the server, because only the recordings in progress are synchronized. Use
+     * {@link #queryRecordings(RecordingQuery)} to fetch a page of the recordings instead of all of them.
+     */
     @Override
     public List<Recording> getRecordings() throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
-        return recordings;
+        return queryRecordings(new RecordingQuery()).recordings;
+    }
+
+    /**
+     * Served from the synchronized state, so this doesn't block
+     */
+    @Override
+    public List<Recording> getRecordingsInProgress() {
+        List<Recording> inProgress = new ArrayList<>(recordings.size());
+        for (Recording recording : recordings.values()) {
+            inProgress.add(new Recording(recording));
+        }
+        return inProgress;
+    }
+
+    @Override
+    public RecordingQuery.Result queryRecordings(RecordingQuery query) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
+        RecordingsRequest recordingsRequest = new RecordingsRequest();
+        recordingsRequest.query = query;
+        String msg = recordingsRequestAdapter.toJson(recordingsRequest);
+        RequestBody body = RequestBody.create(JSON, msg);
+        Request.Builder builder = new Request.Builder()
+                .url("http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/rec")
+                .post(body);
+        addHmacIfNeeded(msg, builder);
+        Request request = builder.build();
+        try (Response response = client.execute(request)) {
+            String json = response.body().string();
+            if (response.isSuccessful()) {
+                RecordingListResponse resp = recordingListResponseAdapter.fromJson(json);
+                if (resp.status.equals("success")) {
+                    RecordingQuery.Result result = new RecordingQuery.Result();
+                    result.total = resp.total;
+                    result.recordings = resp.recordings;
+                    return result;
+                } else {
+                    throw new IOException("Server returned error " + resp.status + " " + resp.msg);
+                }
+            } else {
+                throw new HttpException(response.code(), response.message());
+            }
+        }
     }
 
     @Override
     public void delete(Recording recording) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
         String msg = "{\"action\": \"delete\", \"recording\": \""+recording.getPath()+"\"}";
+        sendDeleteRequest(msg, Collections.singletonList(recording));
+    }
+
+    @Override
+    public void delete(List<Recording> recordings) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
+        DeleteRequest deleteRequest = new DeleteRequest();
+        for (Recording recording : recordings) {
+            deleteRequest.recordings.add(recording.getPath());
+        }
+        sendDeleteRequest(deleteRequestAdapter.toJson(deleteRequest), recordings);
+    }
+
+    private void sendDeleteRequest(String msg, List<Recording> deleted) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
         RequestBody body = RequestBody.create(JSON, msg);
         Request.Builder builder = new Request.Builder()
                 .url("http://" + config.getSettings().httpServer + ":" + config.getSettings().httpPort + "/rec")
@@ -353,7 +564,9 @@ public class RemoteRecorder implements Recorder {
                 if(!resp.status.equals("success")) {
                     throw new IOException("Couldn't delete recording: " + resp.msg);
                 } else {
-                    recordings.remove(recording);
+                    for (Recording recording : deleted) {
+                        recordings.remove(recording.getPath());
+                    }
                 }
             } else {
                 throw new IOException("Couldn't delete recording: " + resp.msg);
@@ -361,6 +574,11 @@ public class RemoteRecorder implements Recorder {
         }
     }
 
+    private static class DeleteRequest {
+        public String action = "delete";
+        public List<String> recordings = new ArrayList<>();
+    }
+
     public static class ModelRequest {
         private String action;
         private Model model;
@@ -393,6 +611,11 @@ public class RemoteRecorder implements Recorder {
         sendRequest("switch", model);
     }
 
+    @Override
+    public void priorityChanged(Model model) throws IOException, InvalidKeyException, NoSuchAlgorithmException, IllegalStateException {
+        sendRequest("priority", model);
+    }
+
     @Override
     public void suspendRecording(Model model) throws InvalidKeyException, NoSuchAlgorithmException, IllegalStateException, IOException {
         sendRequest("suspend", model);
@@ -571,6 +794,16 @@ public class RemoteRecorder implements Recorder {
                     return false;
                 }
 
+                @Override
+                public int getMaxConcurrentOnlineChecks() {
+                    return 1;
+                }
+
+                @Override
+                public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException {
+                    return Collections.emptyMap();
+                }
+
                 @Override
                 public Model createModelFromUrl(String url) {
                     return null;
@@ -0,0 +1,203 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the segments of a server recording in one append-only pack file instead of one file per segment.
+ * <p>
+ * The pack file <code>segments.pack</code> contains the segments one after the other in the order, in which
+ * they have been downloaded. The index <code>segments.idx</code> has one line per segment:
+ * <code>&lt;name&gt; &lt;offset&gt; &lt;length&gt; &lt;duration&gt;</code>. The names are the file names, which the
+ * segments would have had, so the segments can be ordered by name and the playlists refer to them like before.
+ * The segment is written before its index line and the end of the pack only advances, if both writes succeeded.
+ * So a crash can only leave unreferenced bytes at the end of the pack, which are overwritten by the next segment,
+ * and a partial last line, which is ignored.
+ */
+public class SegmentPack implements Closeable {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(SegmentPack.class);
+
+    public static final String PACK_FILE = "segments.pack";
+    public static final String INDEX_FILE = "segments.idx";
+
+    private File recDir;
+    private FileChannel pack;
+    private FileChannel index;
+    private long size;
+
+    private SegmentPack(File recDir) throws IOException {
+        this.recDir = recDir;
+        pack = FileChannel.open(new File(recDir, PACK_FILE).toPath(), CREATE, WRITE);
+        index = FileChannel.open(new File(recDir, INDEX_FILE).toPath(), CREATE, READ, WRITE);
+        index.position(index.size());
+        terminateLastLine();
+        // continue after the last complete segment, unreferenced bytes of an interrupted write are overwritten
+        size = 0;
+        for (Entry entry : readIndex(recDir)) {
+            size = Math.max(size, entry.offset + entry.length);
+        }
+    }
+
+    /**
+     * Opens the pack of the given recording for appending. A new pack is created, if there is none yet
+     */
+    public static SegmentPack open(File recDir) throws IOException {
+        return new SegmentPack(recDir);
+    }
+
+    /**
+     * @return true, if the given recording directory contains a pack
+     */
+    public static boolean exists(File recDir) {
+        return new File(recDir, INDEX_FILE).exists();
+    }
+
+    /**
+     * Appends a segment to the pack
+     * @param name the file name of the segment. Spaces are replaced, because they separate the columns of the index
+     * @param data the content of the segment
+     * @param duration the duration of the segment in seconds
+     */
+    public synchronized void append(String name, byte[] data, float duration) throws IOException {
+        // the segment is written at the end of the last complete segment, so the bytes of a failed append are overwritten
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            pack.write(buffer, size + buffer.position());
+        }
+        String line = String.format(Locale.ROOT, "%s %d %d %f%n", name.replace(' ', '_'), size, data.length, duration);
+        long indexSize = index.position();
+        try {
+            write(index, ByteBuffer.wrap(line.getBytes(UTF_8)));
+        } catch (IOException e) {
+            // remove the partial line, so that the next entry doesn't get appended to it
+            try {
+                index.truncate(indexSize);
+                index.position(indexSize);
+            } catch (IOException e1) {
+                e.addSuppressed(e1);
+            }
+            throw e;
+        }
+        size += data.length;
+    }
+
+    /**
+     * Finishes a partial line, which has been left by a crash, so that the next entry starts on a new line
+     */
+    private void terminateLastLine() throws IOException {
+        long length = index.size();
+        if (length > 0) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            index.read(last, length - 1);
+            if (last.get(0) != '\n') {
+                write(index, ByteBuffer.wrap(new byte[] { '\n' }));
+            }
+        }
+    }
+
+    private void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            pack.close();
+        } finally {
+            index.close();
+        }
+        LOG.debug("Closed segment pack {} with {} bytes", recDir, size);
+    }
+
+    /**
+     * @return the segments of the given recording sorted by name
+     */
+    public static List<Entry> readIndex(File recDir) throws IOException {
+        File indexFile = new File(recDir, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(indexFile.toPath(), UTF_8)) {
+            String[] columns = line.split(" ");
+            if (columns.length != 4) {
+                LOG.debug("Ignoring incomplete index entry {} in {}", line, recDir);
+                continue;
+            }
+            try {
+                Entry entry = new Entry();
+                entry.name = columns[0];
+                entry.offset = Long.parseLong(columns[1]);
+                entry.length = Long.parseLong(columns[2]);
+                entry.duration = Float.parseFloat(columns[3]);
+                entries.add(entry);
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring invalid index entry {} in {}", line, recDir);
+            }
+        }
+        entries.sort(Comparator.comparing(e -> e.name));
+        return entries;
+    }
+
+    /**
+     * @return the segments of the given recording by name
+     */
+    public static Map<String, Entry> readIndexByName(File recDir) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        for (Entry entry : readIndex(recDir)) {
+            entries.put(entry.name, entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads one segment from the pack of the given recording
+     */
+    public static byte[] read(File recDir, Entry entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(recDir, PACK_FILE).toPath(), READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) entry.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new IOException("Segment " + entry.name + " exceeds the pack of " + recDir);
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Deletes the pack and the index of the given recording
+     */
+    public static void delete(File recDir) throws IOException {
+        Files.deleteIfExists(new File(recDir, PACK_FILE).toPath());
+        Files.deleteIfExists(new File(recDir, INDEX_FILE).toPath());
+    }
+
+    public static class Entry {
+        public String name;
+        public long offset;
+        public long length;
+        public float duration;
+    }
+}
@@ -0,0 +1,269 @@
+package ctbrec.recorder;
+
+import static ctbrec.Recording.State.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Config;
+import ctbrec.Recording;
+import ctbrec.Settings;
+import ctbrec.recorder.download.Download;
+
+/**
+ * Watches the free space of the volumes of the {@link StoragePool} and applies the retention rules of the settings.
+ * <p>
+ * The write rate of the running downloads on each volume is sampled on every {@link #update(Collection)} and used to
+ * project, when the free space of the volume will drop below {@link Settings#minimumSpaceLeftInBytes}. If this is going
+ * to happen within {@link Settings#retentionLeadTimeInSecs}, old recordings are deleted (or moved to the archive dir)
+ * in the background, so that the recordings can go on. The rules are:
+ * <ul>
+ * <li>recordings older than {@link Settings#retentionMaxAgeInDays}</li>
+ * <li>the oldest recordings of a model, which uses more than {@link Settings#retentionMaxBytesPerModel}</li>
+ * <li>the oldest recordings of all models on a volume, if {@link Settings#retentionOldestFirst} is enabled and the
+ * volume needs space</li>
+ * </ul>
+ * Only finished recordings are touched. All rules are disabled by default.
+ */
+public class StorageManager {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(StorageManager.class);
+
+    private static final long RETENTION_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    private Config config;
+    private Recorder recorder;
+    private StoragePool storagePool;
+    private Map<Download, Long> lastBytesWritten = new HashMap<>();
+    /** the write rate of each volume in bytes per second */
+    private Map<File, Double> writeRates = new HashMap<>();
+    private long lastUpdate = 0;
+    private long lastRetentionRun = 0;
+    private AtomicBoolean cleanupRunning = new AtomicBoolean(false);
+    private ExecutorService cleanupThread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setName("StorageManager");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    public StorageManager(Config config, Recorder recorder, StoragePool storagePool) {
+        this.config = config;
+        this.recorder = recorder;
+        this.storagePool = storagePool;
+    }
+
+    /**
+     * Samples the write rate of the given downloads and the free space and starts a cleanup, if necessary.
+     * Has to be called periodically.
+     * @param downloads the running downloads
+     */
+    public synchronized void update(Collection<Download> downloads) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<File, Long> written = new HashMap<>();
+        Map<Download, Long> bytesWritten = new HashMap<>();
+        for (Download download : downloads) {
+            long bytes = download.getBytesWritten();
+            File volume = storagePool.getVolume(download.getTarget());
+            if (volume != null) {
+                written.merge(volume, bytes - lastBytesWritten.getOrDefault(download, 0L), Long::sum);
+            }
+            bytesWritten.put(download, bytes);
+        }
+        if (lastUpdate > 0 && now > lastUpdate) {
+            Map<File, Double> rates = new HashMap<>();
+            for (File volume : storagePool.getVolumes()) {
+                double rate = written.getOrDefault(volume, 0L) * 1000.0 / (now - lastUpdate);
+                double writeRate = writeRates.getOrDefault(volume, 0.0);
+                // smooth the rate a bit, the segments don't arrive evenly
+                rates.put(volume, writeRate == 0 ? rate : writeRate * 0.7 + rate * 0.3);
+            }
+            writeRates = rates;
+        }
+        lastBytesWritten = bytesWritten;
+        lastUpdate = now;
+
+        Map<File, Long> bytesToFree = getBytesToFree();
+        boolean retentionDue = now - lastRetentionRun > RETENTION_INTERVAL;
+        if ((!bytesToFree.isEmpty() || retentionDue) && isRetentionEnabled()) {
+            lastRetentionRun = now;
+            startCleanup(bytesToFree);
+        }
+    }
+
+    /**
+     * @return the number of bytes, which have to be freed on each volume, which is running out of space
+     */
+    private Map<File, Long> getBytesToFree() {
+        Settings settings = config.getSettings();
+        Map<File, Long> bytesToFree = new HashMap<>();
+        if (settings.minimumSpaceLeftInBytes <= 0) {
+            return bytesToFree;
+        }
+        for (File volume : storagePool.getVolumes()) {
+            try {
+                // we want to have enough space left to record for the configured lead time
+                double writeRate = writeRates.getOrDefault(volume, 0.0);
+                long needed = settings.minimumSpaceLeftInBytes + (long) (writeRate * settings.retentionLeadTimeInSecs);
+                long free = storagePool.getUsableSpace(volume);
+                if (needed > free) {
+                    bytesToFree.put(volume, needed - free);
+                }
+            } catch (IOException e) {
+                LOG.warn("Couldn't check free space of {}", volume, e);
+            }
+        }
+        return bytesToFree;
+    }
+
+    private boolean isRetentionEnabled() {
+        Settings settings = config.getSettings();
+        return settings.retentionMaxAgeInDays > 0 || settings.retentionMaxBytesPerModel > 0 || settings.retentionOldestFirst;
+    }
+
+    private void startCleanup(Map<File, Long> bytesToFree) {
+        if (cleanupRunning.compareAndSet(false, true)) {
+            cleanupThread.submit(() -> {
+                try {
+                    cleanup(bytesToFree);
+                } catch (Exception e) {
+                    LOG.error("Error while applying the retention rules", e);
+                } finally {
+                    cleanupRunning.set(false);
+                }
+            });
+        }
+    }
+
+    private void cleanup(Map<File, Long> bytesToFree) throws Exception {
+        Settings settings = config.getSettings();
+        List<Recording> recordings = recorder.getRecordings().stream()
+                .filter(r -> r.getStatus() == FINISHED)
+                .sorted(Comparator.comparing(Recording::getStartDate))
+                .collect(Collectors.toList());
+        Map<File, Long> freed = new HashMap<>();
+
+        if (settings.retentionMaxAgeInDays > 0) {
+            Instant oldest = Instant.now().minus(Duration.ofDays(settings.retentionMaxAgeInDays));
+            for (Recording rec : new ArrayList<>(recordings)) {
+                if (rec.getStartDate().isBefore(oldest)) {
+                    LOG.info("Recording {} is older than {} days", rec.getPath(), settings.retentionMaxAgeInDays);
+                    remove(rec, recordings, freed);
+                }
+            }
+        }
+
+        if (settings.retentionMaxBytesPerModel > 0) {
+            // models of different sites can have the same name. the site of old recordings is unknown, they are grouped by name
+            Map<List<String>, List<Recording>> byModel = recordings.stream()
+                    .collect(Collectors.groupingBy(r -> Arrays.asList(r.getSiteName(), r.getModelName())));
+            for (List<Recording> modelRecordings : byModel.values()) {
+                long size = modelRecordings.stream().mapToLong(Recording::getSizeInByte).sum();
+                for (Recording rec : modelRecordings) {
+                    if (size <= settings.retentionMaxBytesPerModel) {
+                        break;
+                    }
+                    LOG.info("Recordings of {} on {} exceed the quota", rec.getModelName(), rec.getSiteName());
+                    size -= rec.getSizeInByte();
+                    remove(rec, recordings, freed);
+                }
+            }
+        }
+
+        if (settings.retentionOldestFirst && !bytesToFree.isEmpty()) {
+            for (Recording rec : new ArrayList<>(recordings)) {
+                // only recordings on the volumes, which need space, help
+                File volume = getVolume(rec);
+                long needed = bytesToFree.getOrDefault(volume, 0L) - freed.getOrDefault(volume, 0L);
+                if (needed > 0) {
+                    LOG.info("Space is running out on {}. Freeing {} bytes", volume, needed);
+                    remove(rec, recordings, freed);
+                }
+            }
+        }
+        for (Map.Entry<File, Long> entry : freed.entrySet()) {
+            LOG.info("Freed {} bytes on {}", entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Removes the recording and adds its size to the freed bytes of its volume
+     */
+    private void remove(Recording rec, List<Recording> recordings, Map<File, Long> freed) {
+        try {
+            File volume = getVolume(rec);
+            String archiveDir = config.getSettings().retentionArchiveDir;
+            if (archiveDir != null && !archiveDir.isEmpty()) {
+                archive(rec, new File(archiveDir));
+            }
+            recorder.delete(rec);
+            recordings.remove(rec);
+            if (volume != null) {
+                freed.merge(volume, rec.getSizeInByte(), Long::sum);
+            }
+        } catch (Exception e) {
+            LOG.error("Couldn't remove recording {}", rec.getPath(), e);
+        }
+    }
+
+    private File getVolume(Recording rec) {
+        return storagePool.getVolume(storagePool.resolve(rec.getPath()));
+    }
+
+    private void archive(Recording rec, File archiveDir) throws IOException {
+        Path source = storagePool.resolve(rec.getPath()).toPath();
+        Path target = new File(archiveDir, rec.getPath()).toPath();
+        LOG.info("Moving {} to {}", source, target);
+        // the archive usually is on another volume, so we have to copy and can't just rename
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path copy = source.equals(file) ? target : target.resolve(source.relativize(file));
+                Files.createDirectories(copy.getParent());
+                Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (Files.isRegularFile(source)) {
+            for (File sidecar : DeletionService.getSidecars(source.toFile())) {
+                if (sidecar.exists()) {
+                    Files.copy(sidecar.toPath(), target.resolveSibling(sidecar.getName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        cleanupThread.shutdownNow();
+    }
+}
@@ -0,0 +1,221 @@
+package ctbrec.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ctbrec.Config;
+import ctbrec.Settings;
+import ctbrec.recorder.download.Download;
+
+/**
+ * The directories, which recordings are saved to. This is {@link Settings#recordingsDir} and
+ * the directories in {@link Settings#additionalRecordingsDirs}, which usually are on different disks.
+ * <p>
+ * New recordings are placed on the volume with the most free space per running recording, so that the write load
+ * is spread over all disks. The paths of the recordings stay relative to their volume, so the rest of the
+ * application doesn't have to know, on which volume a recording is.
+ */
+public class StoragePool {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(StoragePool.class);
+
+    private Config config;
+    private Map<String, FileStore> fileStores = new ConcurrentHashMap<>();
+
+    public StoragePool(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * @return all volumes of the pool. The first one is {@link Settings#recordingsDir}
+     */
+    public List<File> getVolumes() {
+        Settings settings = config.getSettings();
+        List<File> volumes = new ArrayList<>();
+        volumes.add(new File(settings.recordingsDir));
+        if (settings.additionalRecordingsDirs != null) {
+            for (String dir : settings.additionalRecordingsDirs) {
+                File volume = new File(dir);
+                if (!dir.trim().isEmpty() && !volumes.contains(volume)) {
+                    volumes.add(volume);
+                }
+            }
+        }
+        return volumes;
+    }
+
+    /**
+     * Selects the volume for a new recording. This is the volume with the most free space per running recording.
+     * Volumes, which have less free space than {@link Settings#minimumSpaceLeftInBytes}, are not used.
+     * @param running the running downloads
+     * @return the selected volume or null, if no volume has enough space left
+     */
+    public File selectVolume(Collection<Download> running) {
+        List<File> volumes = getVolumes();
+        if (volumes.size() == 1) {
+            return hasEnoughSpace(volumes.get(0)) ? volumes.get(0) : null;
+        }
+
+        Map<File, Integer> writers = new HashMap<>();
+        for (Download download : running) {
+            File volume = getVolume(download.getTarget());
+            if (volume != null) {
+                writers.merge(volume, 1, Integer::sum);
+            }
+        }
+
+        File selected = null;
+        double bestScore = -1;
+        for (File volume : volumes) {
+            try {
+                if (!hasEnoughSpace(volume)) {
+                    continue;
+                }
+                double score = (double) getFileStore(volume).getUsableSpace() / (writers.getOrDefault(volume, 0) + 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    selected = volume;
+                }
+            } catch (IOException e) {
+                LOG.warn("Couldn't check free space of {}", volume, e);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return true, if the volume has more free space than {@link Settings#minimumSpaceLeftInBytes}
+     */
+    public boolean hasEnoughSpace(File volume) {
+        long minimum = config.getSettings().minimumSpaceLeftInBytes;
+        if (minimum == 0) { // 0 means don't check
+            return true;
+        }
+        try {
+            return getFileStore(volume).getUsableSpace() > minimum;
+        } catch (IOException e) {
+            LOG.warn("Couldn't check free space of {}", volume, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the free space of the disk, which contains the given volume
+     */
+    public long getUsableSpace(File volume) throws IOException {
+        return getFileStore(volume).getUsableSpace();
+    }
+
+    /**
+     * @return the volume, which contains the given file or null, if the file is not in the pool
+     */
+    public File getVolume(File file) {
+        if (file == null) {
+            return null;
+        }
+        String path = file.getAbsolutePath();
+        for (File volume : getVolumes()) {
+            String volumePath = volume.getAbsolutePath();
+            if (path.equals(volumePath) || path.startsWith(volumePath + File.separator)) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a path of a recording, which is relative to its volume
+     * @return the file on the first volume, which contains the path. If no volume contains it, the file on the first volume
+     */
+    public File resolve(String relativePath) {
+        List<File> volumes = getVolumes();
+        for (File volume : volumes) {
+            File file = new File(volume, relativePath);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return new File(volumes.get(0), relativePath);
+    }
+
+    /**
+     * @return the path of the file relative to its volume, starting with a slash
+     */
+    public String relativize(File file) {
+        File volume = getVolume(file);
+        String path = file.getAbsolutePath();
+        if (volume != null) {
+            path = path.substring(volume.getAbsolutePath().length());
+        }
+        if (!path.startsWith("/")) {
+            path = '/' + path;
+        }
+        return path;
+    }
+
+    /**
+     * @return true, if the file is one of the volumes itself
+     */
+    public boolean isVolume(File file) {
+        return getVolumes().contains(file);
+    }
+
+    /**
+     * @return the total size of all disks of the pool. Volumes on the same disk are only counted once.
+     */
+    public long getTotalSpaceBytes() throws IOException {
+        long total = 0;
+        for (FileStore store : getDistinctFileStores()) {
+            total += store.getTotalSpace();
+        }
+        return total;
+    }
+
+    /**
+     * @return the free space of all disks of the pool. Volumes on the same disk are only counted once.
+     */
+    public long getFreeSpaceBytes() throws IOException {
+        long free = 0;
+        for (FileStore store : getDistinctFileStores()) {
+            free += store.getUsableSpace();
+        }
+        return free;
+    }
+
+    private Set<FileStore> getDistinctFileStores() throws IOException {
+        Set<FileStore> stores = new HashSet<>();
+        for (File volume : getVolumes()) {
+            stores.add(getFileStore(volume));
+        }
+        return stores;
+    }
+
+    private FileStore getFileStore(File volume) throws IOException {
+        // looking up the file store is expensive, so we cache it for each directory
+        String path = volume.getAbsolutePath();
+        FileStore store = fileStores.get(path);
+        if (store == null) {
+            // the directory might not have been created yet, so we use the closest existing parent
+            File existing = volume.getAbsoluteFile();
+            while (!existing.exists() && existing.getParentFile() != null) {
+                existing = existing.getParentFile();
+            }
+            store = Files.getFileStore(existing.toPath());
+            fileStores.put(path, store);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,33 @@
+package ctbrec.recorder;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.taktik.mpegts.sinks.MTSSink;
+
+import ctbrec.Model;
+
+/**
+ * A post-processor, which runs inside of the JVM and gets every MPEG-TS packet of a recording,
+ * while the recording is written. The packets are passed in after they have been written to the
+ * recording file, so the results of the post-processor are ready, when the recording ends.
+ * No second pass over the file is needed.
+ * <p>
+ * A new instance is created for each recording file (also for each part of a split recording),
+ * so implementations don't have to be thread-safe. They need a public no-arg constructor and get
+ * enabled by adding the class name to {@link ctbrec.Settings#streamingPostProcessors}.
+ * <p>
+ * Implementations must not modify the packets. {@link #send(org.taktik.mpegts.MTSPacket)} is called on the
+ * thread, which writes the recording, so expensive work should be handed off to another thread.
+ * {@link #close()} is called, when the recording file is complete.
+ */
+public interface StreamingPostProcessor extends MTSSink {
+
+    /**
+     * Called once before the first packet is passed to the post-processor
+     * @param model the model, which is recorded
+     * @param target the recording file, the packets are written to
+     * @throws IOException
+     */
+    public void init(Model model, File target) throws IOException;
+}
@@ -1,16 +1,32 @@
 package ctbrec.recorder.download;
 
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,21 +43,40 @@ import com.iheartradio.m3u8.data.TrackData;
 
 import ctbrec.Config;
 import ctbrec.Model;
+import ctbrec.io.BandwidthGovernor;
+import ctbrec.io.CoalescingWriter;
 import ctbrec.io.HttpClient;
 import ctbrec.io.HttpException;
+import ctbrec.io.ThrottledInputStream;
+import ctbrec.recorder.RecordingMetadata;
+import ctbrec.recorder.RecordingThreads;
 import okhttp3.Request;
 import okhttp3.Response;
 
 public abstract class AbstractHlsDownload implements Download {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(AbstractHlsDownload.class);
+    private static final long METADATA_SAVE_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * The number of segments, which one recording may have in the shared pool. More segments have to wait, so that
+     * the queue of the pool contains the segments of all recordings in turn and a slow recording doesn't delay the others
+     */
+    private static final int MAX_SEGMENTS_IN_FLIGHT = 3;
 
-    ExecutorService downloadThreadPool = Executors.newFixedThreadPool(5);
+    ExecutorService downloadThreadPool = RecordingThreads.getSegmentDownloadPool();
     HttpClient client;
     volatile boolean running = false;
     volatile boolean alive = true;
     Instant startTime;
     Model model;
+    CompletableFuture<Download> finished = new CompletableFuture<>();
+    AtomicLong bytesWritten = new AtomicLong();
+    File recordingsDir;
+    RecordingMetadata metadata = new RecordingMetadata();
+    private long metadataSavedAt = 0;
+    private BandwidthGovernor.Share bandwidthShare;
+    private Semaphore segmentsInFlight = new Semaphore(MAX_SEGMENTS_IN_FLIGHT);
+    private boolean segmentDownloader = false;
 
     public AbstractHlsDownload(HttpClient client) {
         this.client = client;
@@ -73,6 +108,7 @@ public abstract class AbstractHlsDownload implements Download {
                             lsp.totalDuration += trackData.getTrackInfo().duration;
                             lsp.lastSegDuration = trackData.getTrackInfo().duration;
                             lsp.segments.add(segmentUri);
+                            lsp.durations.add(trackData.getTrackInfo().duration);
                         }
                     }
                     return lsp;
@@ -95,8 +131,12 @@ public abstract class AbstractHlsDownload implements Download {
         String url = null;
         if(model.getStreamUrlIndex() >= 0 && model.getStreamUrlIndex() < streamSources.size()) {
             // TODO don't use the index, but the bandwidth. if the bandwidth does not match, take the closest one
-            LOG.debug("{} selected {}", model.getName(), streamSources.get(model.getStreamUrlIndex()));
-            url = streamSources.get(model.getStreamUrlIndex()).getMediaPlaylistUrl();
+            StreamSource selected = streamSources.get(model.getStreamUrlIndex());
+            LOG.debug("{} selected {}", model.getName(), selected);
+            if (selected.bandwidth > getAvailableBandwidth()) {
+                LOG.info("Selected stream of {} needs more bandwidth than the recording gets. Segments might get lost", model.getName());
+            }
+            url = selected.getMediaPlaylistUrl();
         } else {
             // filter out stream resolutions, which are too high
             int maxRes = Config.getInstance().getSettings().maximumResolution;
@@ -109,6 +149,12 @@ public abstract class AbstractHlsDownload implements Download {
                     }
                 }
             }
+            // filter out streams, which need more bandwidth than this recording gets, but keep the lowest one
+            long availableBandwidth = getAvailableBandwidth();
+            while(streamSources.size() > 1 && streamSources.get(streamSources.size()-1).bandwidth > availableBandwidth) {
+                StreamSource removed = streamSources.remove(streamSources.size()-1);
+                LOG.debug("Not enough bandwidth for {} ({} bit/s available)", removed, availableBandwidth);
+            }
             if(streamSources.isEmpty()) {
                 throw new ExecutionException(new RuntimeException("No stream left in playlist"));
             } else {
@@ -125,6 +171,185 @@ public abstract class AbstractHlsDownload implements Download {
         return alive;
     }
 
+    @Override
+    public CompletableFuture<Download> getFinishedFuture() {
+        return finished;
+    }
+
+    /**
+     * Marks this download as terminated and notifies everyone, who waits for it
+     */
+    void downloadFinished() {
+        saveMetadata();
+        if (bandwidthShare != null) {
+            bandwidthShare.close();
+        }
+        synchronized (this) {
+            if (segmentDownloader) {
+                segmentDownloader = false;
+                RecordingThreads.removeSegmentDownloader();
+            }
+        }
+        alive = false;
+        finished.complete(this);
+    }
+
+    /**
+     * Blocks until the download thread has terminated
+     */
+    void awaitTermination() {
+        try {
+            finished.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Couldn't wait for download to finish", e);
+        } catch (ExecutionException e) {
+            LOG.error("Download terminated with an error", e);
+        }
+    }
+
+    /**
+     * Counts a segment, which has been written to the recording. The metadata is saved every few seconds,
+     * so that the listing of the recordings is up to date while the recording is running.
+     * @param bytes the size of the segment
+     * @param duration the duration of the segment in seconds
+     */
+    void segmentWritten(long bytes, float duration) {
+        bytesWritten.addAndGet(bytes);
+        boolean save;
+        synchronized (this) {
+            metadata.sizeInByte += bytes;
+            metadata.durationInSeconds += duration;
+            save = System.currentTimeMillis() - metadataSavedAt > METADATA_SAVE_INTERVAL;
+        }
+        if (save) {
+            saveMetadata();
+        }
+    }
+
+    /**
+     * Saves the counted size and duration next to the recording. Nothing is saved, if no segment has been written,
+     * so that empty recordings can still be recognized and deleted.
+     */
+    void saveMetadata() {
+        File target = getTarget();
+        if (target == null || !target.exists()) {
+            return;
+        }
+        RecordingMetadata copy;
+        synchronized (this) {
+            if (metadata.sizeInByte == 0) {
+                return;
+            }
+            metadataSavedAt = System.currentTimeMillis();
+            copy = new RecordingMetadata(metadata);
+        }
+        if (model != null && model.getSite() != null) {
+            copy.siteName = model.getSite().getName();
+        }
+        copy.save(target);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Submits a segment download to the shared pool. Blocks, while this recording has
+     * {@link #MAX_SEGMENTS_IN_FLIGHT} segments in the pool already, so the download loop slows down instead of
+     * queuing an unlimited number of segments.
+     */
+    <T> Future<T> submitSegment(Callable<T> download) throws InterruptedException {
+        synchronized (this) {
+            if (!segmentDownloader) {
+                segmentDownloader = true;
+                RecordingThreads.addSegmentDownloader();
+            }
+        }
+        segmentsInFlight.acquire();
+        FutureTask<T> task = new FutureTask<T>(download) {
+            @Override
+            protected void done() {
+                // called once, also if the task gets cancelled before it has been run
+                segmentsInFlight.release();
+            }
+        };
+        try {
+            downloadThreadPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            segmentsInFlight.release();
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Reads a whole segment into memory
+     */
+    byte[] readSegment(InputStream in) throws IOException {
+        ByteArrayOutputStream segment = new ByteArrayOutputStream(1024 * 1024);
+        byte[] b = new byte[1024 * 100];
+        int length = -1;
+        while( (length = in.read(b)) >= 0 ) {
+            segment.write(b, 0, length);
+        }
+        return segment.toByteArray();
+    }
+
+    /**
+     * @return the given stream, throttled to the share of the bandwidth, which this download gets
+     */
+    InputStream throttle(InputStream in) {
+        return new ThrottledInputStream(in, getBandwidthShare());
+    }
+
+    /**
+     * @return the given file channel or a channel, which writes through the {@link CoalescingWriter},
+     * if write coalescing is enabled
+     */
+    WritableByteChannel coalesce(FileChannel channel) {
+        if (CoalescingWriter.isEnabled()) {
+            return CoalescingWriter.getInstance().open(channel, getRecordingsDir(Config.getInstance()));
+        }
+        return channel;
+    }
+
+    /**
+     * Opens a new file for writing. If write coalescing is enabled, the writes go through the {@link CoalescingWriter}
+     */
+    OutputStream openOutputStream(File file) throws IOException {
+        if (CoalescingWriter.isEnabled()) {
+            return Channels.newOutputStream(coalesce(FileChannel.open(file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)));
+        }
+        return new FileOutputStream(file);
+    }
+
+    private synchronized BandwidthGovernor.Share getBandwidthShare() {
+        if (bandwidthShare == null) {
+            int weight = model != null ? model.getPriority() : Model.DEFAULT_PRIORITY;
+            bandwidthShare = BandwidthGovernor.getInstance().register(weight);
+        }
+        return bandwidthShare;
+    }
+
+    /**
+     * @return the bandwidth in bit/s, which this download gets
+     */
+    private long getAvailableBandwidth() {
+        long rate = getBandwidthShare().getRate();
+        return rate == Long.MAX_VALUE ? Long.MAX_VALUE : rate * 8;
+    }
+
+    @Override
+    public void setRecordingsDir(File recordingsDir) {
+        this.recordingsDir = recordingsDir;
+    }
+
+    File getRecordingsDir(Config config) {
+        return recordingsDir != null ? recordingsDir : new File(config.getSettings().recordingsDir);
+    }
+
     @Override
     public Instant getStartTime() {
         return startTime;
@@ -142,6 +367,8 @@ public abstract class AbstractHlsDownload implements Download {
         public float lastSegDuration = 0;
         public float targetDuration = 0;
         public List<String> segments = new ArrayList<>();
+        /** the durations of the segments in seconds, in the same order as the segments */
+        public List<Float> durations = new ArrayList<>();
 
         public SegmentPlaylist(String url) {
             this.url = url;
@@ -3,6 +3,7 @@ package ctbrec.recorder.download;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 import ctbrec.Config;
 import ctbrec.Model;
@@ -14,4 +15,34 @@ public interface Download {
     public File getTarget();
     public Model getModel();
     public Instant getStartTime();
+
+    /**
+     * @return a future, which is completed with this download, as soon as the download has terminated
+     */
+    public CompletableFuture<Download> getFinishedFuture();
+
+    /**
+     * @return the number of bytes, which have been written by this download so far
+     */
+    public long getBytesWritten();
+
+    /**
+     * Sets the directory (the volume of the storage pool), which this download saves the recording to.
+     * Has to be called before {@link #start(Model, Config)}. If it is not set, {@link ctbrec.Settings#recordingsDir} is used.
+     */
+    public void setRecordingsDir(File recordingsDir);
+
+    /**
+     * Lets this download append to the recording of a download, which terminated shortly before
+     * (e.g. because of a short disconnect). Has to be called before {@link #start(Model, Config)}.
+     * @param previous the terminated download of the same model
+     */
+    public void continueRecording(Download previous);
+
+    /**
+     * Called, when the recording is complete and won't be continued anymore.
+     * Releases everything, which has been kept open for a continuation of the recording.
+     * Further calls have no effect.
+     */
+    public void release();
 }
@@ -5,9 +5,9 @@ import static ctbrec.Recording.State.*;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -18,8 +18,13 @@ import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +38,7 @@ import ctbrec.event.EventBusHolder;
 import ctbrec.event.RecordingStateChangedEvent;
 import ctbrec.io.HttpClient;
 import ctbrec.io.HttpException;
+import ctbrec.recorder.SegmentPack;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -44,7 +50,9 @@ public class HlsDownload extends AbstractHlsDownload {
 
     private int segmentCounter = 1;
     private NumberFormat nf = new DecimalFormat("000000");
-    private Object downloadFinished = new Object();
+    private boolean continued = false;
+    private List<Future<Boolean>> pendingSegments = new ArrayList<>();
+    private SegmentPack pack;
 
     public HlsDownload(HttpClient client) {
         super(client);
@@ -54,12 +62,14 @@ public class HlsDownload extends AbstractHlsDownload {
     public void start(Model model, Config config) throws IOException {
         try {
             running = true;
-            startTime = Instant.now();
             super.model = model;
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm");
-            String startTime = sdf.format(new Date());
-            Path modelDir = FileSystems.getDefault().getPath(config.getSettings().recordingsDir, model.getName());
-            downloadDir = FileSystems.getDefault().getPath(modelDir.toString(), startTime);
+            if(!continued) {
+                startTime = Instant.now();
+                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm");
+                String startTime = sdf.format(new Date());
+                Path modelDir = getRecordingsDir(config).toPath().resolve(model.getName());
+                downloadDir = FileSystems.getDefault().getPath(modelDir.toString(), startTime);
+            }
 
             if(!model.isOnline()) {
                 throw new IOException(model.getName() +"'s room is not public");
@@ -74,6 +84,9 @@ public class HlsDownload extends AbstractHlsDownload {
                 if (!Files.exists(downloadDir, LinkOption.NOFOLLOW_LINKS)) {
                     Files.createDirectories(downloadDir);
                 }
+                if (config.getSettings().packSegments) {
+                    pack = SegmentPack.open(downloadDir.toFile());
+                }
                 int lastSegment = 0;
                 int nextSegment = 0;
                 int waitFactor = 1;
@@ -84,14 +97,17 @@ public class HlsDownload extends AbstractHlsDownload {
                         waitFactor *= 2;
                         LOG.warn("Missed segments {} < {} in download for {} - setting wait factor to 1/{}", nextSegment, lsp.seq, model, waitFactor);
                     }
+                    pendingSegments.removeIf(Future::isDone);
                     int skip = nextSegment - lsp.seq;
-                    for (String segment : lsp.segments) {
+                    for (int i = 0; i < lsp.segments.size(); i++) {
                         if(skip > 0) {
                             skip--;
                         } else {
-                            URL segmentUrl = new URL(segment);
+                            URL segmentUrl = new URL(lsp.segments.get(i));
                             String prefix = nf.format(segmentCounter++);
-                            downloadThreadPool.submit(new SegmentDownload(segmentUrl, downloadDir, client, prefix));
+                            float duration = lsp.durations.get(i);
+                            // blocks, if this recording has too many segments in the shared pool already
+                            pendingSegments.add(submitSegment(new SegmentDownload(segmentUrl, downloadDir, client, prefix, duration)));
                             //new SegmentDownload(segment, downloadDir).call();
                         }
                     }
@@ -141,41 +157,84 @@ public class HlsDownload extends AbstractHlsDownload {
         } catch(Exception e) {
             throw new IOException("Couldn't download segment", e);
         } finally {
-            downloadThreadPool.shutdown();
+            waitForPendingSegments();
+            closePack();
+            downloadFinished();
+            LOG.debug("Download for {} terminated", model);
+        }
+    }
+
+    private void waitForPendingSegments() {
+        LOG.debug("Waiting for last segments for {}", model);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        for (Future<Boolean> segment : pendingSegments) {
             try {
-                LOG.debug("Waiting for last segments for {}", model);
-                downloadThreadPool.awaitTermination(60, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {}
-            alive = false;
-            synchronized (downloadFinished) {
-                downloadFinished.notifyAll();
+                segment.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                LOG.warn("Segment download didn't finish in time for {}", model);
+                segment.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // the segment download logs its errors itself
+            }
+        }
+        pendingSegments.clear();
+    }
+
+    private void closePack() {
+        if (pack != null) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                LOG.error("Couldn't close segment pack of {}", model, e);
             }
-            LOG.debug("Download for {} terminated", model);
         }
     }
 
     @Override
     public void stop() {
         running = false;
-        try {
-            synchronized (downloadFinished) {
-                downloadFinished.wait();
-            }
-        } catch (InterruptedException e) {
-            LOG.error("Couldn't wait for download to finish", e);
+        awaitTermination();
+    }
+
+    @Override
+    public void continueRecording(Download previous) {
+        if(!(previous instanceof HlsDownload)) {
+            throw new IllegalArgumentException("Can't continue a " + previous.getClass().getSimpleName());
+        }
+        HlsDownload prev = (HlsDownload) previous;
+        downloadDir = prev.downloadDir;
+        segmentCounter = prev.segmentCounter;
+        startTime = prev.startTime;
+        synchronized (prev) {
+            metadata = prev.metadata;
+            // the new stream starts with the next segment, which has to be marked in the playlist
+            metadata.addDiscontinuity(segmentCounter);
         }
+        continued = true;
     }
 
-    private static class SegmentDownload implements Callable<Boolean> {
+    @Override
+    public void release() {
+        // segments are complete files, there is nothing to release
+    }
+
+    private class SegmentDownload implements Callable<Boolean> {
         private URL url;
         private Path file;
+        private String name;
         private HttpClient client;
+        private float duration;
 
-        public SegmentDownload(URL url, Path dir, HttpClient client, String prefix) {
+        public SegmentDownload(URL url, Path dir, HttpClient client, String prefix, float duration) {
             this.url = url;
             this.client = client;
+            this.duration = duration;
             File path = new File(url.getPath());
-            file = FileSystems.getDefault().getPath(dir.toString(), prefix + '_' + path.getName());
+            name = prefix + '_' + path.getName();
+            file = FileSystems.getDefault().getPath(dir.toString(), name);
         }
 
         @Override
@@ -185,15 +244,32 @@ public class HlsDownload extends AbstractHlsDownload {
             for (int i = 1; i <= maxTries; i++) {
                 Request request = new Request.Builder().url(url).addHeader("connection", "keep-alive").build();
                 Response response = client.execute(request);
+                if (pack != null) {
+                    try (InputStream in = throttle(response.body().byteStream())) {
+                        // the segment is appended in one piece, so that the segments don't get mixed up in the pack
+                        byte[] data = readSegment(in);
+                        pack.append(name, data, duration);
+                        segmentWritten(data.length, duration);
+                        return true;
+                    } catch(Exception e) {
+                        LOG.warn("Error while downloading segment {} on try {}", name, i, e);
+                    } finally {
+                        response.close();
+                    }
+                    continue;
+                }
                 try (
-                        FileOutputStream fos = new FileOutputStream(file.toFile());
-                        InputStream in = response.body().byteStream())
+                        OutputStream fos = openOutputStream(file.toFile());
+                        InputStream in = throttle(response.body().byteStream()))
                 {
                     byte[] b = new byte[1024 * 100];
                     int length = -1;
+                    long size = 0;
                     while( (length = in.read(b)) >= 0 ) {
                         fos.write(b, 0, length);
+                        size += length;
                     }
+                    segmentWritten(size, duration);
                     return true;
                 } catch(FileNotFoundException e) {
                     LOG.debug("Segment does not exist {}", url.getFile());
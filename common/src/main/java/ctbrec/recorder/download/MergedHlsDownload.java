@@ -11,6 +11,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -19,24 +20,23 @@ import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.taktik.mpegts.Streamer;
 import org.taktik.mpegts.sinks.ByteChannelSink;
 import org.taktik.mpegts.sinks.MTSSink;
+import org.taktik.mpegts.sinks.TeeSink;
 import org.taktik.mpegts.sources.BlockingMultiMTSSource;
+import org.taktik.mpegts.sources.ContinuityFixer;
 import org.taktik.mpegts.sources.InputStreamMTSSource;
 
 import com.iheartradio.m3u8.ParseException;
@@ -50,6 +50,9 @@ import ctbrec.event.RecordingStateChangedEvent;
 import ctbrec.io.HttpClient;
 import ctbrec.io.HttpException;
 import ctbrec.recorder.ProgressListener;
+import ctbrec.recorder.RecordingMetadata;
+import ctbrec.recorder.RecordingThreads;
+import ctbrec.recorder.StreamingPostProcessor;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -63,10 +66,10 @@ public class MergedHlsDownload extends AbstractHlsDownload {
     private ZonedDateTime splitRecStartTime;
     private Config config;
     private File targetFile;
-    private BlockingQueue<Runnable> downloadQueue = new LinkedBlockingQueue<>(50);
-    private ExecutorService downloadThreadPool = new ThreadPoolExecutor(5, 5, 2, TimeUnit.MINUTES, downloadQueue);
-    private FileChannel fileChannel = null;
-    private Object downloadFinished = new Object();
+    private WritableByteChannel fileChannel = null;
+    private List<StreamingPostProcessor> streamingPostProcessors;
+    private ContinuityFixer continuityFixer;
+    private boolean continued = false;
 
     public MergedHlsDownload(HttpClient client) {
         super(client);
@@ -111,15 +114,7 @@ public class MergedHlsDownload extends AbstractHlsDownload {
             } catch(Exception e) {
                 LOG.error("Couldn't stop streamer", e);
             }
-            downloadThreadPool.shutdown();
-            try {
-                LOG.debug("Waiting for last segments for {}", model);
-                downloadThreadPool.awaitTermination(60, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {}
-            alive = false;
-            synchronized (downloadFinished) {
-                downloadFinished.notifyAll();
-            }
+            downloadFinished();
             LOG.debug("Download terminated for {}", segmentPlaylistUri);
         }
     }
@@ -127,16 +122,18 @@ public class MergedHlsDownload extends AbstractHlsDownload {
     @Override
     public void start(Model model, Config config) throws IOException {
         this.config = config;
+        super.model = model;
         try {
             if(!model.isOnline(IGNORE_CACHE)) {
                 throw new IOException(model.getName() +"'s room is not public");
             }
 
             running = true;
-            super.startTime = Instant.now();
-            splitRecStartTime = ZonedDateTime.now();
-            super.model = model;
-            targetFile = Config.getInstance().getFileForRecording(model);
+            if(!continued) {
+                super.startTime = Instant.now();
+                splitRecStartTime = ZonedDateTime.now();
+                targetFile = Config.getInstance().getFileForRecording(model, getRecordingsDir(config));
+            }
 
             // let the world know, that we are recording now
             RecordingStateChangedEvent evt = new RecordingStateChangedEvent(getTarget(), RECORDING, model, getStartTime());
@@ -170,15 +167,7 @@ public class MergedHlsDownload extends AbstractHlsDownload {
                     LOG.error("Couldn't stop streamer", e);
                 }
             }
-            downloadThreadPool.shutdown();
-            try {
-                LOG.debug("Waiting for last segments for {}", model);
-                downloadThreadPool.awaitTermination(60, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {}
-            alive = false;
-            synchronized (downloadFinished) {
-                downloadFinished.notifyAll();
-            }
+            downloadFinished();
             LOG.debug("Download for {} terminated", model);
         }
     }
@@ -237,36 +226,32 @@ public class MergedHlsDownload extends AbstractHlsDownload {
     }
 
     private void downloadRecording(SegmentPlaylist lsp) throws IOException, InterruptedException {
-        for (String segment : lsp.segments) {
-            URL segmentUrl = new URL(segment);
-            SegmentDownload segmentDownload = new SegmentDownload(segmentUrl, client);
-            byte[] segmentData = segmentDownload.call();
-            writeSegment(segmentData);
+        for (int i = 0; i < lsp.segments.size(); i++) {
+            URL segmentUrl = new URL(lsp.segments.get(i));
+            SegmentDownload segmentDownload = new SegmentDownload(segmentUrl, lsp.durations.get(i), client);
+            writeSegment(segmentDownload.call());
         }
     }
 
-    private void downloadNewSegments(SegmentPlaylist lsp, int nextSegment) throws MalformedURLException, MissingSegmentException, ExecutionException, HttpException {
+    private void downloadNewSegments(SegmentPlaylist lsp, int nextSegment) throws MalformedURLException, MissingSegmentException, ExecutionException, HttpException, InterruptedException {
         int skip = nextSegment - lsp.seq;
         if(lsp.segments.isEmpty()) {
             LOG.debug("Empty playlist: {}", lsp.url);
         }
 
-        // add segments to download threadpool
-        Queue<Future<byte[]>> downloads = new LinkedList<>();
-        if(downloadQueue.remainingCapacity() == 0) {
-            LOG.warn("Download to slow for this stream. Download queue is full. Skipping segment");
-        } else {
-            for (String segment : lsp.segments) {
-                if(!running) {
-                    break;
-                }
-                if(skip > 0) {
-                    skip--;
-                } else {
-                    URL segmentUrl = new URL(segment);
-                    Future<byte[]> download = downloadThreadPool.submit(new SegmentDownload(segmentUrl, client));
-                    downloads.add(download);
-                }
+        // add segments to the shared download pool. submitSegment blocks, if this recording has too many
+        // segments in the pool already. we wait for all of them below
+        Queue<Future<Segment>> downloads = new LinkedList<>();
+        for (int i = 0; i < lsp.segments.size(); i++) {
+            if(!running) {
+                break;
+            }
+            if(skip > 0) {
+                skip--;
+            } else {
+                URL segmentUrl = new URL(lsp.segments.get(i));
+                Future<Segment> download = submitSegment(new SegmentDownload(segmentUrl, lsp.durations.get(i), client));
+                downloads.add(download);
             }
         }
 
@@ -275,11 +260,10 @@ public class MergedHlsDownload extends AbstractHlsDownload {
         writeFinishedSegments(downloads);
     }
 
-    private void writeFinishedSegments(Queue<Future<byte[]>> downloads) throws ExecutionException, HttpException {
-        for (Future<byte[]> downloadFuture : downloads) {
+    private void writeFinishedSegments(Queue<Future<Segment>> downloads) throws ExecutionException, HttpException {
+        for (Future<Segment> downloadFuture : downloads) {
             try {
-                byte[] segmentData = downloadFuture.get();
-                writeSegment(segmentData);
+                writeSegment(downloadFuture.get());
             } catch (InterruptedException e) {
                 LOG.error("Error while downloading segment", e);
             } catch (ExecutionException e) {
@@ -314,8 +298,9 @@ public class MergedHlsDownload extends AbstractHlsDownload {
         }
     }
 
-    private void writeSegment(byte[] segmentData) throws InterruptedException {
-        InputStream in = new ByteArrayInputStream(segmentData);
+    private void writeSegment(Segment segment) throws InterruptedException {
+        segmentWritten(segment.data.length, segment.duration);
+        InputStream in = new ByteArrayInputStream(segment.data);
         InputStreamMTSSource source = InputStreamMTSSource.builder().setInputStream(in).build();
         multiSource.addSource(source);
     }
@@ -326,11 +311,22 @@ public class MergedHlsDownload extends AbstractHlsDownload {
             long seconds = recordingDuration.getSeconds();
             if(seconds >= config.getSettings().splitRecordings) {
                 try {
-                    targetFile = Config.getInstance().getFileForRecording(model);
+                    // the metadata belongs to the file, so the new file starts with new counters
+                    saveMetadata();
+                    synchronized (this) {
+                        metadata = new RecordingMetadata();
+                    }
+                    targetFile = Config.getInstance().getFileForRecording(model, getRecordingsDir(config));
                     LOG.debug("Switching to file {}", targetFile.getAbsolutePath());
-                    fileChannel = FileChannel.open(targetFile.toPath(), CREATE, WRITE);
-                    MTSSink sink = ByteChannelSink.builder().setByteChannel(fileChannel).build();
+                    fileChannel = coalesce(FileChannel.open(targetFile.toPath(), CREATE, WRITE));
+                    List<StreamingPostProcessor> previousPostProcessors;
+                    synchronized (this) {
+                        previousPostProcessors = streamingPostProcessors;
+                        streamingPostProcessors = createStreamingPostProcessors(targetFile);
+                    }
+                    MTSSink sink = createSink(fileChannel);
                     streamer.switchSink(sink);
+                    closeStreamingPostProcessors(previousPostProcessors);
                     splitRecStartTime = ZonedDateTime.now();
                 } catch (IOException e) {
                     LOG.error("Error while splitting recording", e);
@@ -372,30 +368,72 @@ public class MergedHlsDownload extends AbstractHlsDownload {
         if(streamer != null) {
             streamer.stop();
         }
-        try {
-            synchronized (downloadFinished) {
-                downloadFinished.wait();
-            }
-        } catch (InterruptedException e) {
-            LOG.error("Couldn't wait for download to finish", e);
-        }
+        awaitTermination();
         LOG.debug("Download stopped");
     }
 
+    @Override
+    public void continueRecording(Download previous) {
+        if(!(previous instanceof MergedHlsDownload)) {
+            throw new IllegalArgumentException("Can't continue a " + previous.getClass().getSimpleName());
+        }
+        MergedHlsDownload prev = (MergedHlsDownload) previous;
+        targetFile = prev.targetFile;
+        startTime = prev.startTime;
+        splitRecStartTime = prev.splitRecStartTime;
+        metadata = prev.metadata;
+        if(prev.multiSource != null) {
+            continuityFixer = prev.multiSource.getContinuityFixer();
+        }
+        streamingPostProcessors = prev.takeStreamingPostProcessors();
+        continued = true;
+    }
+
+    /**
+     * Can be called several times, e.g. by the post-processing and the shutdown at the same time.
+     * Only the first call closes the post-processors.
+     */
+    @Override
+    public void release() {
+        closeStreamingPostProcessors(takeStreamingPostProcessors());
+    }
+
+    private synchronized List<StreamingPostProcessor> takeStreamingPostProcessors() {
+        List<StreamingPostProcessor> postProcessors = streamingPostProcessors;
+        streamingPostProcessors = null;
+        return postProcessors;
+    }
+
     private Thread createMergeThread(File targetFile, ProgressListener listener, boolean liveStream) {
-        Thread t = new Thread(() -> {
-            multiSource = BlockingMultiMTSSource.builder()
+        String threadName = "Segment Merger Thread" + Optional.ofNullable(model).map(m -> " [" + m.getName() + "]").orElse("");
+        return RecordingThreads.newThread(threadName, () -> {
+            BlockingMultiMTSSource.BlockingMultiMTSSourceBuilder sourceBuilder = BlockingMultiMTSSource.builder()
                     .setFixContinuity(true)
-                    .setProgressListener(listener)
-                    .build();
+                    .setProgressListener(listener);
+            if(continuityFixer != null) {
+                // the packets of this download follow the packets of the previous download
+                continuityFixer.nextSource();
+                sourceBuilder.setContinuityFixer(continuityFixer);
+            }
+            multiSource = sourceBuilder.build();
 
             try {
                 Path downloadDir = targetFile.getParentFile().toPath();
                 if (!Files.exists(downloadDir, LinkOption.NOFOLLOW_LINKS)) {
                     Files.createDirectories(downloadDir);
                 }
-                fileChannel = FileChannel.open(targetFile.toPath(), CREATE, WRITE);
-                MTSSink sink = ByteChannelSink.builder().setByteChannel(fileChannel).build();
+                if(continued) {
+                    LOG.debug("Appending to {}", targetFile);
+                    fileChannel = coalesce(FileChannel.open(targetFile.toPath(), CREATE, WRITE, APPEND));
+                } else {
+                    fileChannel = coalesce(FileChannel.open(targetFile.toPath(), CREATE, WRITE));
+                }
+                synchronized (this) {
+                    if(streamingPostProcessors == null) {
+                        streamingPostProcessors = createStreamingPostProcessors(targetFile);
+                    }
+                }
+                MTSSink sink = createSink(fileChannel);
 
                 streamer = Streamer.builder()
                         .setSource(multiSource)
@@ -403,6 +441,7 @@ public class MergedHlsDownload extends AbstractHlsDownload {
                         .setSleepingEnabled(liveStream)
                         .setBufferSize(10)
                         .setName(Optional.ofNullable(model).map(m -> m.getName()).orElse(""))
+                        .setThreadFactory(RecordingThreads.threadFactory("Streamer"))
                         .build();
 
                 // Start streaming
@@ -415,24 +454,69 @@ public class MergedHlsDownload extends AbstractHlsDownload {
             }  catch(Exception e) {
                 LOG.error("Error while saving stream to file", e);
             } finally {
+                // close first, the coalescing writer might not have written everything yet
+                closeFile(fileChannel);
                 deleteEmptyRecording(targetFile);
                 running = false;
-                closeFile(fileChannel);
             }
         });
-        if(model != null) {
-            t.setName("Segment Merger Thread [" + model.getName() + "]");
-        } else {
-            t.setName("Segment Merger Thread");
+    }
+
+    /**
+     * Creates the sink for the recording file. For live recordings the {@link StreamingPostProcessor}s
+     * are attached to the sink, so that they see every packet, which is written to the file.
+     * If a reconnect grace period is configured, the post-processors stay open, when the sink is closed,
+     * because the recording might be continued by another download. They are closed in {@link #release()} then.
+     */
+    private MTSSink createSink(WritableByteChannel channel) {
+        MTSSink fileSink = ByteChannelSink.builder().setByteChannel(channel).build();
+        if(streamingPostProcessors == null || streamingPostProcessors.isEmpty()) {
+            return fileSink;
+        }
+        return TeeSink.builder()
+                .setPrimary(fileSink)
+                .addSecondaries(streamingPostProcessors)
+                .setCloseSecondaries(config.getSettings().reconnectGracePeriodInSecs <= 0)
+                .build();
+    }
+
+    private List<StreamingPostProcessor> createStreamingPostProcessors(File targetFile) {
+        List<StreamingPostProcessor> postProcessors = new ArrayList<>();
+        if(model == null || config == null) {
+            return postProcessors;
+        }
+        for (String className : config.getSettings().streamingPostProcessors) {
+            try {
+                Class<?> ppClass = Class.forName(className);
+                StreamingPostProcessor pp = (StreamingPostProcessor) ppClass.getDeclaredConstructor().newInstance();
+                pp.init(model, targetFile);
+                postProcessors.add(pp);
+            } catch (Exception e) {
+                LOG.error("Couldn't create streaming post-processor {} for {}", className, model.getName(), e);
+            }
+        }
+        return postProcessors;
+    }
+
+    private void closeStreamingPostProcessors(List<StreamingPostProcessor> postProcessors) {
+        if(postProcessors == null || config == null || config.getSettings().reconnectGracePeriodInSecs <= 0) {
+            // without grace period the post-processors get closed together with the sink
+            return;
+        }
+        for (StreamingPostProcessor pp : postProcessors) {
+            try {
+                pp.close();
+            } catch (Exception e) {
+                LOG.error("Couldn't close streaming post-processor {}", pp.getClass().getName(), e);
+            }
         }
-        t.setDaemon(true);
-        return t;
     }
 
     private void deleteEmptyRecording(File targetFile) {
         try {
             if (targetFile.exists() && targetFile.length() == 0) {
                 Files.delete(targetFile.toPath());
+                RecordingMetadata.delete(targetFile);
                 Files.delete(targetFile.getParentFile().toPath());
             }
         } catch (Exception e) {
@@ -440,7 +524,7 @@ public class MergedHlsDownload extends AbstractHlsDownload {
         }
     }
 
-    private void closeFile(FileChannel channel) {
+    private void closeFile(WritableByteChannel channel) {
         try {
             if (channel != null && channel.isOpen()) {
                 channel.close();
@@ -450,25 +534,36 @@ public class MergedHlsDownload extends AbstractHlsDownload {
         }
     }
 
-    private class SegmentDownload implements Callable<byte[]> {
+    private static class Segment {
+        private byte[] data;
+        private float duration;
+
+        Segment(byte[] data, float duration) {
+            this.data = data;
+            this.duration = duration;
+        }
+    }
+
+    private class SegmentDownload implements Callable<Segment> {
         private URL url;
+        private float duration;
         private HttpClient client;
 
-        public SegmentDownload(URL url, HttpClient client) {
+        public SegmentDownload(URL url, float duration, HttpClient client) {
             this.url = url;
+            this.duration = duration;
             this.client = client;
         }
 
         @Override
-        public byte[] call() throws IOException {
+        public Segment call() throws IOException {
             LOG.trace("Downloading segment " + url.getFile());
             int maxTries = 3;
             for (int i = 1; i <= maxTries && running; i++) {
                 Request request = new Request.Builder().url(url).addHeader("connection", "keep-alive").build();
                 try (Response response = client.execute(request)) {
                     if(response.isSuccessful()) {
-                        byte[] segment = response.body().bytes();
-                        return segment;
+                        return new Segment(readSegment(throttle(response.body().byteStream())), duration);
                     } else {
                         throw new HttpException(response.code(), response.message());
                     }
@@ -0,0 +1,66 @@
+package ctbrec.recorder.postprocessing;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.taktik.mpegts.MTSPacket;
+
+import ctbrec.Model;
+import ctbrec.recorder.StreamingPostProcessor;
+
+/**
+ * Calculates the SHA-256 checksum of a recording while it is written and saves it
+ * next to the recording in the format of sha256sum (e.g. model_2018-10-01_20-00.ts.sha256)
+ */
+public class ChecksumPostProcessor implements StreamingPostProcessor {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ChecksumPostProcessor.class);
+
+    private MessageDigest digest;
+    private File target;
+
+    /**
+     * @return the checksum file of the given recording file
+     */
+    public static File getChecksumFile(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + ".sha256");
+    }
+
+    @Override
+    public void init(Model model, File target) throws IOException {
+        this.target = target;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not supported", e);
+        }
+    }
+
+    @Override
+    public void send(MTSPacket packet) throws Exception {
+        digest.update(packet.getBuffer());
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (target == null || !target.exists() || target.length() == 0) {
+            return;
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        File checksumFile = getChecksumFile(target);
+        String line = hex + "  " + target.getName() + '\n';
+        Files.write(checksumFile.toPath(), line.getBytes(UTF_8), CREATE, WRITE, TRUNCATE_EXISTING);
+        LOG.debug("Wrote checksum for {} to {}", target, checksumFile);
+    }
+}
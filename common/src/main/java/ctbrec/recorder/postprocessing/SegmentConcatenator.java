@@ -0,0 +1,109 @@
+package ctbrec.recorder.postprocessing;
+
+import static java.nio.file.StandardCopyOption.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.taktik.mpegts.Merger;
+import org.taktik.mpegts.sources.MTSSources;
+
+import com.iheartradio.m3u8.Encoding;
+import com.iheartradio.m3u8.Format;
+import com.iheartradio.m3u8.ParseException;
+import com.iheartradio.m3u8.ParsingMode;
+import com.iheartradio.m3u8.PlaylistException;
+import com.iheartradio.m3u8.PlaylistParser;
+import com.iheartradio.m3u8.data.MediaPlaylist;
+import com.iheartradio.m3u8.data.Playlist;
+import com.iheartradio.m3u8.data.TrackData;
+import com.iheartradio.m3u8.data.TrackInfo;
+
+import ctbrec.recorder.PlaylistGenerator;
+import ctbrec.recorder.SegmentPack;
+
+/**
+ * Merges the segments of a finished server recording into one continuous TS file.
+ * The segments are taken in the order of the playlist. Afterwards the playlist is replaced with
+ * a playlist, which only contains the merged file, and the segments are deleted. So the recording
+ * is still a directory with a playlist and can be played and downloaded like before.
+ * Segments, which are stored in a {@link SegmentPack}, are read from the pack.
+ */
+public class SegmentConcatenator {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(SegmentConcatenator.class);
+
+    public static final String MERGED_FILE = "recording.ts";
+
+    /**
+     * @param recDir the recording directory, which has to contain a valid playlist
+     * @return the merged file or null, if there was nothing to merge
+     * @throws IOException
+     * @throws ParseException
+     * @throws PlaylistException
+     */
+    public File concatenate(File recDir) throws IOException, ParseException, PlaylistException {
+        File playlistFile = new File(recDir, "playlist.m3u8");
+        List<TrackData> tracks = readTracks(playlistFile);
+        if (tracks.size() < 2) {
+            LOG.debug("{} has less than 2 segments. Nothing to merge", recDir);
+            return null;
+        }
+
+        List<File> segments = new ArrayList<>(tracks.size());
+        float duration = 0;
+        for (TrackData track : tracks) {
+            segments.add(new File(recDir, track.getUri()));
+            duration += track.getTrackInfo().duration;
+        }
+        Map<String, SegmentPack.Entry> packed = SegmentPack.readIndexByName(recDir);
+
+        long start = System.currentTimeMillis();
+        File merged = new File(recDir, MERGED_FILE);
+        File part = new File(recDir, MERGED_FILE + ".part");
+        new Merger().merge(segments.size(), i -> segments.get(i).getName(), i -> {
+            SegmentPack.Entry entry = packed.get(segments.get(i).getName());
+            if (entry != null) {
+                return MTSSources.from(new ByteArrayInputStream(SegmentPack.read(recDir, entry)));
+            } else {
+                return MTSSources.from(segments.get(i));
+            }
+        }, part);
+        Files.move(part.toPath(), merged.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+
+        // switch the playlist over to the merged file, before the segments vanish
+        TrackData track = new TrackData.Builder()
+                .withUri(merged.getName())
+                .withTrackInfo(new TrackInfo(duration, merged.getName()))
+                .build();
+        new PlaylistGenerator().writePlaylist(recDir, Collections.singletonList(track));
+
+        for (File segment : segments) {
+            if (!segment.equals(merged)) {
+                Files.deleteIfExists(segment.toPath());
+            }
+        }
+        SegmentPack.delete(recDir);
+        LOG.debug("Merged {} segments of {} in {} ms", segments.size(), recDir, System.currentTimeMillis() - start);
+        return merged;
+    }
+
+    private List<TrackData> readTracks(File playlistFile) throws IOException, ParseException, PlaylistException {
+        try (InputStream in = new FileInputStream(playlistFile)) {
+            PlaylistParser parser = new PlaylistParser(in, Format.EXT_M3U, Encoding.UTF_8, ParsingMode.LENIENT);
+            Playlist playlist = parser.parse();
+            MediaPlaylist mediaPlaylist = playlist.getMediaPlaylist();
+            return mediaPlaylist.getTracks();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package ctbrec.recorder.postprocessing;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.common.VideoCodecMeta;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.ColorUtil;
+import org.jcodec.scale.Transform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.taktik.mpegts.MTSPacket;
+
+import ctbrec.Config;
+import ctbrec.Model;
+import ctbrec.recorder.StreamingPostProcessor;
+
+/**
+ * Takes a keyframe of the video stream every {@link ctbrec.Settings#thumbnailIntervalInSecs} seconds and
+ * saves the thumbnails as one contact sheet next to the recording (e.g. model_2018-10-01_20-00.ts.jpg).
+ * <p>
+ * Keyframes are found with the random access indicator of the video packets, so only these frames are decoded.
+ * Decoding happens on a single low priority thread, which is shared by all recordings. If the decoder falls
+ * behind, keyframes are skipped. The number of queued keyframes is limited per recording and for all recordings
+ * together, so the contact sheet of a finished recording only waits for a few keyframes.
+ */
+public class ThumbnailPostProcessor implements StreamingPostProcessor {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ThumbnailPostProcessor.class);
+
+    private static final int THUMBNAIL_WIDTH = 240;
+    private static final int COLUMNS = 6;
+    private static final int MAX_THUMBNAILS = 60;
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_PENDING_FRAMES = 2;
+    private static final int MAX_PENDING_FRAMES_TOTAL = 8;
+    private static final long PTS_CLOCK = 90_000;
+
+    private static final ExecutorService DECODER = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r);
+        t.setName("ThumbnailDecoder");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private static final AtomicInteger PENDING_FRAMES_TOTAL = new AtomicInteger();
+
+    private File target;
+    private volatile long interval;
+    private int videoPid = -1;
+    private long lastThumbnailPts = -1;
+    private ByteArrayOutputStream frame;
+    private AtomicInteger pendingFrames = new AtomicInteger();
+    // only accessed by the decoder thread
+    private List<BufferedImage> thumbnails = new ArrayList<>();
+
+    /**
+     * @return the contact sheet of the given recording file
+     */
+    public static File getContactSheet(File recording) {
+        return new File(recording.getParentFile(), recording.getName() + ".jpg");
+    }
+
+    @Override
+    public void init(Model model, File target) throws IOException {
+        this.target = target;
+        interval = Math.max(1, Config.getInstance().getSettings().thumbnailIntervalInSecs) * PTS_CLOCK;
+    }
+
+    @Override
+    public void send(MTSPacket packet) throws Exception {
+        if (!packet.isContainsPayload() || packet.getPayload() == null) {
+            return;
+        }
+        ByteBuffer payload = packet.getPayload().duplicate();
+        payload.rewind();
+
+        if (packet.isPayloadUnitStartIndicator()) {
+            if (videoPid == -1 && isVideoPes(payload)) {
+                videoPid = packet.getPid();
+            }
+            if (packet.getPid() != videoPid) {
+                return;
+            }
+
+            // a new frame starts, so the frame we collected so far is complete
+            if (frame != null) {
+                submitFrame(frame.toByteArray());
+                frame = null;
+            }
+
+            long pts = getPts(payload);
+            if (isKeyframe(packet) && pts >= 0 && (lastThumbnailPts < 0 || Math.abs(pts - lastThumbnailPts) >= interval)) {
+                lastThumbnailPts = pts;
+                frame = new ByteArrayOutputStream(256 * 1024);
+                int headerLength = 9 + (payload.get(8) & 0xff);
+                if (headerLength < payload.remaining()) {
+                    payload.position(headerLength);
+                    append(payload);
+                }
+            }
+        } else if (packet.getPid() == videoPid && frame != null) {
+            append(payload);
+        }
+    }
+
+    private void append(ByteBuffer payload) {
+        if (frame.size() + payload.remaining() > MAX_FRAME_SIZE) {
+            LOG.debug("Keyframe too large. Skipping it");
+            frame = null;
+            return;
+        }
+        byte[] b = new byte[payload.remaining()];
+        payload.get(b);
+        frame.write(b, 0, b.length);
+    }
+
+    private boolean isVideoPes(ByteBuffer payload) {
+        // PES start code followed by a video stream id
+        return payload.remaining() > 9
+                && payload.get(0) == 0 && payload.get(1) == 0 && payload.get(2) == 1
+                && (payload.get(3) & 0xf0) == 0xe0;
+    }
+
+    private boolean isKeyframe(MTSPacket packet) {
+        return packet.isAdaptationFieldExist()
+                && packet.getAdaptationField() != null
+                && packet.getAdaptationField().isRandomAccessIndicator();
+    }
+
+    private long getPts(ByteBuffer payload) {
+        if (payload.remaining() < 14 || (payload.get(7) & 0x80) == 0) {
+            return -1;
+        }
+        return ((long) (payload.get(9) & 0x0e) << 29)
+                | ((long) (payload.getShort(10) & 0xfffe) << 14)
+                | ((payload.getShort(12) & 0xfffe) >> 1);
+    }
+
+    private void submitFrame(byte[] data) {
+        if (pendingFrames.get() >= MAX_PENDING_FRAMES) {
+            LOG.debug("Thumbnail decoder is busy. Skipping keyframe of {}", target);
+            return;
+        }
+        if (PENDING_FRAMES_TOTAL.incrementAndGet() > MAX_PENDING_FRAMES_TOTAL) {
+            PENDING_FRAMES_TOTAL.decrementAndGet();
+            LOG.debug("Thumbnail decoder is busy with other recordings. Skipping keyframe of {}", target);
+            return;
+        }
+        pendingFrames.incrementAndGet();
+        DECODER.submit(() -> {
+            try {
+                addThumbnail(decode(data));
+            } catch (Throwable e) {
+                LOG.debug("Couldn't decode keyframe of {}: {}", target, e.getMessage());
+            } finally {
+                pendingFrames.decrementAndGet();
+                PENDING_FRAMES_TOTAL.decrementAndGet();
+            }
+        });
+    }
+
+    private BufferedImage decode(byte[] data) {
+        H264Decoder decoder = new H264Decoder();
+        VideoCodecMeta meta = decoder.getCodecMeta(ByteBuffer.wrap(data));
+        if (meta == null || meta.getSize() == null) {
+            throw new IllegalStateException("Keyframe doesn't contain SPS/PPS");
+        }
+        int width = (meta.getSize().getWidth() + 15) & ~15;
+        int height = (meta.getSize().getHeight() + 15) & ~15;
+        byte[][] buffer = Picture.create(width, height, ColorSpace.YUV420J).getData();
+        Picture yuv = decoder.decodeFrame(ByteBuffer.wrap(data), buffer);
+        if (yuv == null) {
+            throw new IllegalStateException("Decoder returned no picture");
+        }
+        Picture rgb = Picture.create(yuv.getWidth(), yuv.getHeight(), ColorSpace.RGB);
+        Transform transform = ColorUtil.getTransform(yuv.getColor(), ColorSpace.RGB);
+        transform.transform(yuv, rgb);
+        return scale(toImage(rgb, meta.getSize().getWidth(), meta.getSize().getHeight()));
+    }
+
+    private BufferedImage toImage(Picture rgb, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        byte[] data = rgb.getPlaneData(0);
+        int stride = rgb.getWidth() * 3;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * stride + x * 3;
+                // jcodec stores the samples shifted by -128
+                int r = data[i] + 128;
+                int g = data[i + 1] + 128;
+                int b = data[i + 2] + 128;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private BufferedImage scale(BufferedImage image) {
+        int height = Math.max(1, image.getHeight() * THUMBNAIL_WIDTH / image.getWidth());
+        BufferedImage thumbnail = new BufferedImage(THUMBNAIL_WIDTH, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, THUMBNAIL_WIDTH, height, null);
+        g.dispose();
+        return thumbnail;
+    }
+
+    private void addThumbnail(BufferedImage thumbnail) {
+        thumbnails.add(thumbnail);
+        if (thumbnails.size() > MAX_THUMBNAILS) {
+            // keep every second thumbnail, so that the contact sheet still covers the whole recording
+            List<BufferedImage> reduced = new ArrayList<>();
+            for (int i = 0; i < thumbnails.size(); i += 2) {
+                reduced.add(thumbnails.get(i));
+            }
+            thumbnails = reduced;
+            interval *= 2;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (frame != null) {
+            submitFrame(frame.toByteArray());
+            frame = null;
+        }
+        // runs after all keyframes of this recording have been decoded. This task is not limited, but the queue
+        // holds at most MAX_PENDING_FRAMES_TOTAL keyframes in front of it
+        DECODER.submit(() -> {
+            try {
+                writeContactSheet();
+            } catch (Exception e) {
+                LOG.error("Couldn't write thumbnails for {}", target, e);
+            }
+        });
+    }
+
+    private void writeContactSheet() throws IOException {
+        if (thumbnails.isEmpty()) {
+            return;
+        }
+        int columns = Math.min(COLUMNS, thumbnails.size());
+        int rows = (thumbnails.size() + columns - 1) / columns;
+        int height = thumbnails.get(0).getHeight();
+        BufferedImage sheet = new BufferedImage(columns * THUMBNAIL_WIDTH, rows * height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = sheet.createGraphics();
+        for (int i = 0; i < thumbnails.size(); i++) {
+            g.drawImage(thumbnails.get(i), (i % columns) * THUMBNAIL_WIDTH, (i / columns) * height, null);
+        }
+        g.dispose();
+
+        File output = getContactSheet(target);
+        ImageIO.write(sheet, "jpg", output);
+        LOG.debug("Wrote {} thumbnails to {}", thumbnails.size(), output);
+        thumbnails.clear();
+    }
+}
@@ -1,8 +1,10 @@
 package ctbrec.sites;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import ctbrec.Model;
 import ctbrec.recorder.Recorder;
@@ -51,4 +53,14 @@ public abstract class AbstractSite implements Site {
     public Model createModelFromUrl(String url) {
         return null;
     }
+
+    @Override
+    public int getMaxConcurrentOnlineChecks() {
+        return 4;
+    }
+
+    @Override
+    public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException {
+        return Collections.emptyMap();
+    }
 }
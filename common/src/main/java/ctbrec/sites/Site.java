@@ -1,7 +1,9 @@
 package ctbrec.sites;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import ctbrec.Model;
 import ctbrec.io.HttpClient;
@@ -30,4 +32,18 @@ public interface Site {
     public List<Model> search(String q) throws IOException, InterruptedException;
     public boolean searchRequiresLogin();
     public Model createModelFromUrl(String url);
+
+    /**
+     * @return the number of online checks for models of this site, which may run at the same time
+     */
+    public int getMaxConcurrentOnlineChecks();
+
+    /**
+     * Checks the online state of many models at once, e.g. with one request for a list of all online models.
+     * Afterwards {@link Model#getOnlineState(boolean)} with failFast returns the new state of the checked models.
+     * @param models models of this site
+     * @return for each model, which could be checked this way, whether it is online. The models, which are missing,
+     * have to be checked one by one. Sites without such a possibility return an empty map
+     */
+    public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException;
 }
@@ -2,9 +2,15 @@ package ctbrec.sites.camsoda;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,7 +31,10 @@ public class Camsoda extends AbstractSite {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(Camsoda.class);
     public static final String BASE_URI = "https://www.camsoda.com";
+    private static final Duration ONLINE_LIST_MAX_AGE = Duration.ofSeconds(10);
     private HttpClient httpClient;
+    private Map<String, OnlineModel> onlineModels;
+    private Instant onlineModelsLoadedAt = Instant.EPOCH;
 
     @Override
     public String getName() {
@@ -156,6 +165,90 @@ public class Camsoda extends AbstractSite {
         }
     }
 
+    /**
+     * Loads the list of all online models with one request instead of one request per model. The list is reused
+     * for {@link #ONLINE_LIST_MAX_AGE}, so the models, which become due shortly after each other, don't load it again.
+     */
+    @Override
+    public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException {
+        Map<String, OnlineModel> online = getOnlineModels();
+        Map<Model, Boolean> result = new HashMap<>();
+        for (Model model : models) {
+            if (model instanceof CamsodaModel) {
+                CamsodaModel camsodaModel = (CamsodaModel) model;
+                OnlineModel onlineModel = online.get(model.getName().toLowerCase());
+                String status = onlineModel != null ? onlineModel.status : "offline";
+                camsodaModel.setOnlineStateByStatus(status);
+                if (onlineModel != null && onlineModel.streamUrl != null) {
+                    camsodaModel.setStreamUrl(onlineModel.streamUrl);
+                }
+                result.put(model, Objects.equals(status, "online"));
+            }
+        }
+        return result;
+    }
+
+    private synchronized Map<String, OnlineModel> getOnlineModels() throws IOException {
+        if (Duration.between(onlineModelsLoadedAt, Instant.now()).compareTo(ONLINE_LIST_MAX_AGE) < 0) {
+            return onlineModels;
+        }
+        Request req = new Request.Builder().url(BASE_URI + "/api/v1/browse/online").build();
+        try (Response response = getHttpClient().execute(req)) {
+            if (!response.isSuccessful()) {
+                throw new HttpException(response.code(), response.message());
+            }
+            JSONObject json = new JSONObject(response.body().string());
+            if (!json.optBoolean("status")) {
+                throw new IOException("Online list was not ok");
+            }
+            Map<String, OnlineModel> models = new HashMap<>();
+            JSONArray template = json.optJSONArray("template");
+            JSONArray results = json.getJSONArray("results");
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                OnlineModel model = new OnlineModel();
+                String name;
+                JSONArray edgeServers;
+                String streamName;
+                if (result.has("tpl") && template != null) {
+                    JSONArray tpl = result.getJSONArray("tpl");
+                    name = tpl.getString(indexOf(template, "username"));
+                    int status = indexOf(template, "status");
+                    model.status = status >= 0 ? tpl.getString(status) : "online";
+                    edgeServers = tpl.optJSONArray(indexOf(template, "edge_servers"));
+                    streamName = tpl.optString(indexOf(template, "stream_name"), null);
+                } else {
+                    name = result.getString("username");
+                    model.status = result.optString("status", "online");
+                    edgeServers = result.optJSONArray("edge_servers");
+                    streamName = result.optString("stream_name", null);
+                }
+                if (edgeServers != null && edgeServers.length() > 0 && streamName != null) {
+                    model.streamUrl = "https://" + edgeServers.getString(0) + "/cam/mp4:" + streamName + "_h264_aac_480p/playlist.m3u8";
+                }
+                models.put(name.toLowerCase(), model);
+            }
+            LOG.debug("Loaded {} online models", models.size());
+            onlineModels = models;
+            onlineModelsLoadedAt = Instant.now();
+            return onlineModels;
+        }
+    }
+
+    private int indexOf(JSONArray template, String column) {
+        for (int i = 0; i < template.length(); i++) {
+            if (Objects.equals(template.getString(i), column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class OnlineModel {
+        private String status;
+        private String streamUrl;
+    }
+
     @Override
     public boolean isSiteForModel(Model m) {
         return m instanceof CamsodaModel;
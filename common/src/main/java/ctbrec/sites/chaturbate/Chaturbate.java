@@ -4,15 +4,22 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,10 +52,17 @@ import okhttp3.Response;
 public class Chaturbate extends AbstractSite {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(Chaturbate.class);
+    private static final int ONLINE_ROOMS_PAGE_SIZE = 500;
+    /** the number of pages of the online list, until it has been loaded once. Usually there are several thousand rooms */
+    private static final int ONLINE_ROOMS_INITIAL_PAGES = 10;
+    private static final Duration ONLINE_ROOMS_MAX_AGE = Duration.ofSeconds(30);
     static String baseUrl = "https://chaturbate.com";
     public static final String AFFILIATE_LINK = "https://chaturbate.com/in/?track=default&tour=grq0&campaign=55vTi";
     public static final String REGISTRATION_LINK = "https://chaturbate.com/in/?track=default&tour=g4pe&campaign=55vTi";
     private ChaturbateHttpClient httpClient;
+    private Map<String, String> onlineRooms;
+    private Instant onlineRoomsLoadedAt = Instant.EPOCH;
+    private int onlineRoomsPages = ONLINE_ROOMS_INITIAL_PAGES;
 
     @Override
     public void init() throws IOException {
@@ -176,8 +190,6 @@ public class Chaturbate extends AbstractSite {
     }
 
     // #######################
-    private long lastRequest = System.currentTimeMillis();
-
     LoadingCache<String, StreamInfo> streamInfoCache = CacheBuilder.newBuilder()
             .initialCapacity(10_000)
             .maximumSize(10_000)
@@ -223,7 +235,6 @@ public class Chaturbate extends AbstractSite {
     }
 
     StreamInfo loadStreamInfo(String modelName) throws HttpException, IOException, InterruptedException {
-        throttleRequests();
         RequestBody body = new FormBody.Builder()
                 .add("room_slug", modelName)
                 .add("bandwidth", "high")
@@ -254,8 +265,6 @@ public class Chaturbate extends AbstractSite {
     }
 
     public int[] getResolution(String modelName) throws ExecutionException, IOException, ParseException, PlaylistException, InterruptedException {
-        throttleRequests();
-
         int[] res = new int[2];
         StreamInfo streamInfo = getStreamInfo(modelName);
         if(!streamInfo.url.startsWith("http")) {
@@ -293,15 +302,6 @@ public class Chaturbate extends AbstractSite {
         return res;
     }
 
-    private void throttleRequests() throws InterruptedException {
-        long now = System.currentTimeMillis();
-        long diff = now - lastRequest;
-        if(diff < 500) {
-            Thread.sleep(diff);
-        }
-        lastRequest = now;
-    }
-
     public MasterPlaylist getMasterPlaylist(String modelName) throws IOException, ParseException, PlaylistException, ExecutionException {
         StreamInfo streamInfo = getStreamInfo(modelName);
         return getMasterPlaylist(streamInfo);
@@ -339,4 +339,77 @@ public class Chaturbate extends AbstractSite {
             return super.createModelFromUrl(url);
         }
     }
+
+    /**
+     * Loads the list of all online rooms from the affiliate API, which takes one request per
+     * {@value #ONLINE_ROOMS_PAGE_SIZE} rooms. The list is reused for {@link #ONLINE_ROOMS_MAX_AGE}, so the models, which
+     * become due shortly after each other, don't load it again. Checking the models one by one takes one request per
+     * model, so the list is only loaded for more models than it had pages last time. For fewer models an empty
+     * result is returned and the models are checked one by one.
+     */
+    @Override
+    public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException {
+        Map<String, String> rooms = getOnlineRooms(models.size());
+        if (rooms == null) {
+            return Collections.emptyMap();
+        }
+        Map<Model, Boolean> online = new HashMap<>();
+        for (Model model : models) {
+            if (model instanceof ChaturbateModel) {
+                ChaturbateModel chaturbateModel = (ChaturbateModel) model;
+                String roomStatus = rooms.getOrDefault(model.getName().toLowerCase(), "offline");
+                StreamInfo cached = streamInfoCache.getIfPresent(model.getName());
+                if (cached != null && !Objects.equals(cached.room_status, roomStatus)) {
+                    streamInfoCache.invalidate(model.getName());
+                }
+                chaturbateModel.setOnlineStateByRoomStatus(roomStatus);
+                online.put(model, Objects.equals(roomStatus, "public"));
+            }
+        }
+        return online;
+    }
+
+    /**
+     * @param models the number of models to check. The list is only loaded, if this saves requests
+     * @return the show type of the online rooms by lower case user name or null, if there is no current list
+     */
+    private synchronized Map<String, String> getOnlineRooms(int models) throws IOException {
+        boolean fresh = Duration.between(onlineRoomsLoadedAt, Instant.now()).compareTo(ONLINE_ROOMS_MAX_AGE) < 0;
+        if (fresh || models <= onlineRoomsPages) {
+            return fresh ? onlineRooms : null;
+        }
+        Map<String, String> rooms = new HashMap<>();
+        int pages = 0;
+        for (int offset = 0;; offset += ONLINE_ROOMS_PAGE_SIZE) {
+            pages++;
+            String url = getBaseUrl() + "/api/public/affiliates/onlinerooms/?wm=55vTi&client_ip=request_ip&format=json"
+                    + "&limit=" + ONLINE_ROOMS_PAGE_SIZE + "&offset=" + offset;
+            Request req = new Request.Builder().url(url).build();
+            try (Response response = getHttpClient().execute(req)) {
+                if (!response.isSuccessful()) {
+                    throw new HttpException(response.code(), response.message());
+                }
+                JSONObject json = new JSONObject(response.body().string());
+                JSONArray results = json.getJSONArray("results");
+                for (int i = 0; i < results.length(); i++) {
+                    JSONObject room = results.getJSONObject(i);
+                    rooms.put(room.getString("username").toLowerCase(), room.optString("current_show", "public"));
+                }
+                if (results.length() < ONLINE_ROOMS_PAGE_SIZE || offset + results.length() >= json.optInt("count")) {
+                    break;
+                }
+            }
+        }
+        LOG.debug("Loaded {} online rooms in {} requests", rooms.size(), pages);
+        onlineRooms = rooms;
+        onlineRoomsPages = pages;
+        onlineRoomsLoadedAt = Instant.now();
+        return onlineRooms;
+    }
+
+    @Override
+    public int getMaxConcurrentOnlineChecks() {
+        // chaturbate answers with 429, if we send too many requests
+        return 2;
+    }
 }
@@ -84,7 +84,9 @@ public class ChaturbateModel extends AbstractModel {
     public State getOnlineState(boolean failFast) throws IOException, ExecutionException {
         if(failFast) {
             StreamInfo info = getChaturbate().streamInfoCache.getIfPresent(getName());
-            setOnlineStateByRoomStatus(info.room_status);
+            if(info != null) {
+                setOnlineStateByRoomStatus(info.room_status);
+            }
         } else {
             StreamInfo info = getChaturbate().streamInfoCache.get(getName());
             setOnlineStateByRoomStatus(info.room_status);
@@ -92,7 +94,7 @@ public class ChaturbateModel extends AbstractModel {
         return onlineState;
     }
 
-    private void setOnlineStateByRoomStatus(String room_status) {
+    void setOnlineStateByRoomStatus(String room_status) {
         if(room_status != null) {
             switch(room_status) {
             case "public":
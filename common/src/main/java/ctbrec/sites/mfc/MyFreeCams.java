@@ -1,7 +1,11 @@
 package ctbrec.sites.mfc;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -141,4 +145,29 @@ public class MyFreeCams extends AbstractSite {
         }
         return super.createModelFromUrl(url);
     }
+
+    /**
+     * The websocket client knows the state of all models, so all models can be updated in one go
+     */
+    @Override
+    public Map<Model, Boolean> checkOnline(Collection<Model> models) throws IOException {
+        List<MyFreeCamsModel> mfcModels = new ArrayList<>(models.size());
+        for (Model model : models) {
+            if (model instanceof MyFreeCamsModel) {
+                mfcModels.add((MyFreeCamsModel) model);
+            }
+        }
+        client.update(mfcModels);
+        Map<Model, Boolean> online = new HashMap<>();
+        for (MyFreeCamsModel model : mfcModels) {
+            online.put(model, model.getMfcState() == State.ONLINE);
+        }
+        return online;
+    }
+
+    @Override
+    public int getMaxConcurrentOnlineChecks() {
+        // the online state is looked up in the session states of the websocket client, which is locked anyway
+        return 1;
+    }
 }
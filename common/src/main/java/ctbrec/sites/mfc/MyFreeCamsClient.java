@@ -548,6 +548,34 @@ public class MyFreeCamsClient {
         }
     }
 
+    /**
+     * Updates many models at once. Unlike {@link #update(MyFreeCamsModel)}, the session states are only iterated once
+     */
+    public void update(Collection<MyFreeCamsModel> models) {
+        lock.lock();
+        try {
+            Map<String, SessionState> byName = new HashMap<>();
+            Map<Integer, SessionState> byUid = new HashMap<>();
+            for (SessionState state : sessionStates.asMap().values()) {
+                byName.putIfAbsent(Optional.ofNullable(state.getNm()).orElse("").toLowerCase(), state);
+                if (state.getUid() != null && state.getUid() > 0) {
+                    byUid.putIfAbsent(state.getUid(), state);
+                }
+            }
+            for (MyFreeCamsModel model : models) {
+                SessionState state = byName.get(Optional.ofNullable(model.getName()).orElse("").toLowerCase());
+                if (state == null) {
+                    state = byUid.get(model.getUid());
+                }
+                if (state != null) {
+                    model.update(state, getStreamUrl(state));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public String getStreamUrl(SessionState state) {
         Integer camserv = Optional.ofNullable(state.getU()).map(u -> u.getCamserv()).orElse(-1);
         if(camserv != null && camserv != -1) {
@@ -234,6 +234,10 @@ public class MyFreeCamsModel extends AbstractModel {
         this.camScore = camScore;
     }
 
+    public ctbrec.sites.mfc.State getMfcState() {
+        return state;
+    }
+
     public void setMfcState(ctbrec.sites.mfc.State state) {
         this.state = state;
     }
@@ -1,63 +1,167 @@
 package org.taktik.mpegts;
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.WRITE;
+import static java.nio.file.StandardOpenOption.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 
-import org.taktik.mpegts.sinks.ByteChannelSink;
-import org.taktik.mpegts.sinks.MTSSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.taktik.mpegts.sources.ContinuityFixer;
 import org.taktik.mpegts.sources.MTSSource;
 import org.taktik.mpegts.sources.MTSSources;
-import org.taktik.mpegts.sources.MultiplexingMTSSource;
-import org.taktik.mpegts.sources.MultiplexingMTSSource.MultiplexingMTSSourceBuilder;
 
+/**
+ * Concatenates MPEG-TS files (e.g. the segments of a HLS recording) into one file.
+ * <p>
+ * The files are opened one after the other and the packets are collected in a large buffer,
+ * which is written to the target in one go. All packets go through a {@link ContinuityFixer}.
+ * The fixer is only switched to a new source, if the PCR jumps between two files (e.g. because the stream
+ * has been restarted). Segments of an uninterrupted stream are continuous already and are written as they are.
+ */
 public class Merger {
 
-    public static void main(String[] args) throws IOException {
-        File[] files = new File("/home/henni/devel/ctbrec/remux-ts-mp4/src/test/resources").listFiles((f) -> f.getName().startsWith("63"));
-        //File[] files = new File("/home/henni/devel/ctbrec/mpegts-streamer/src/test/resources/yesikasaenz/2018-09-04_23-30").listFiles((f) -> {
-        //        return f.getName().startsWith("media") && f.getName().endsWith(".ts");
-        //    });
-        Arrays.sort(files);
+    private static final transient Logger LOG = LoggerFactory.getLogger(Merger.class);
+
+    private static final int WRITE_BUFFER_SIZE = Constants.MPEGTS_PACKET_SIZE * 1024 * 8;
+    private static final int MAX_PACKETS_WITHOUT_PCR = 1000;
+    private static final long MAX_PCR_GAP = 10L * 27_000_000; // 10 seconds
+
+    private ContinuityFixer continuityFixer = new ContinuityFixer();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private Long lastPcr;
+    private int discontinuities = 0;
 
-        MultiplexingMTSSourceBuilder builder = MultiplexingMTSSource.builder()
-                .setFixContinuity(true);
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: Merger <target> <segment>...");
+            System.exit(1);
+        }
+        List<File> segments = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            segments.add(new File(args[i]));
+        }
+        new Merger().merge(segments, new File(args[0]));
+    }
 
+    /**
+     * Concatenates the given files in the given order
+     * @param segments the files to concatenate
+     * @param target the file to write to. An existing file is overwritten
+     * @throws IOException
+     */
+    public void merge(List<File> segments, File target) throws IOException {
+        merge(segments.size(), i -> segments.get(i).getName(), i -> MTSSources.from(segments.get(i)), target);
+    }
 
-        for (File file : files) {
-            MTSSource source = MTSSources.from(file);
-            builder.addSource(source);
+    /**
+     * Concatenates segments, which are not stored in files of their own
+     * @param count the number of segments
+     * @param names returns the name of a segment by its index for logging
+     * @param opener opens a segment by its index, when it is its turn
+     * @param target the file to write to. An existing file is overwritten
+     * @throws IOException
+     */
+    public void merge(int count, IntFunction<String> names, SegmentOpener opener, File target) throws IOException {
+        LOG.debug("Merging {} segments into {}", count, target);
+        try (FileChannel channel = FileChannel.open(target.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (int i = 0; i < count; i++) {
+                append(names.apply(i), opener.open(i), channel, i == 0);
+            }
+            flush(channel);
         }
+        LOG.debug("Merged {} segments into {}. Fixed {} discontinuities", count, target, discontinuities);
+    }
 
-        File out = new File("merged.ts");
-        FileChannel channel = null;
+    public interface SegmentOpener {
+        MTSSource open(int index) throws IOException;
+    }
+
+    private void append(String segment, MTSSource source, FileChannel channel, boolean first) throws IOException {
         try {
-            channel = FileChannel.open(out.toPath(), CREATE, WRITE);
-            MTSSource mtsSource = builder.build();
-            MTSSink sink = ByteChannelSink.builder().setByteChannel(channel).build();
-
-            // build streamer
-            Streamer streamer = Streamer.builder()
-                    .setSource(mtsSource)
-                    .setSink(sink)
-                    .build();
-
-            // Start streaming
-            streamer.stream();
-
-            //            synchronized (streamer) {
-            //                System.out.println("Waiting for streamer to finish");
-            //                streamer.wait();
-            //                System.out.println("Streamer finished");
-            //            }
-        } catch(Exception e) {
-            e.printStackTrace();
+            // the packets of the segment are held back, until we know, if the segment continues the previous one
+            List<MTSPacket> pending = new ArrayList<>();
+            boolean checked = first;
+            MTSPacket packet;
+            while ((packet = source.nextPacket()) != null) {
+                Long pcr = getPcr(packet);
+                if (checked) {
+                    write(packet, channel);
+                } else {
+                    pending.add(packet);
+                    if (pcr != null || pending.size() >= MAX_PACKETS_WITHOUT_PCR) {
+                        if (pcr != null && isDiscontinuity(pcr)) {
+                            LOG.debug("PCR jump from {} to {} at {}", lastPcr, pcr, segment);
+                            continuityFixer.nextSource();
+                            discontinuities++;
+                        }
+                        checked = true;
+                        for (MTSPacket p : pending) {
+                            write(p, channel);
+                        }
+                        pending.clear();
+                    }
+                }
+                if (pcr != null) {
+                    lastPcr = pcr;
+                }
+            }
+            for (MTSPacket p : pending) {
+                write(p, channel);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Couldn't read " + segment, e);
         } finally {
-            channel.close();
+            try {
+                source.close();
+            } catch (Exception e) {
+                LOG.error("Couldn't close {}", segment, e);
+            }
+        }
+    }
+
+    private boolean isDiscontinuity(long pcr) {
+        if (lastPcr == null) {
+            return false;
+        }
+        long gap = pcr - lastPcr;
+        return gap < 0 || gap > MAX_PCR_GAP;
+    }
+
+    private Long getPcr(MTSPacket packet) {
+        MTSPacket.AdaptationField field = packet.getAdaptationField();
+        if (packet.isAdaptationFieldExist() && field != null && field.isPcrFlag() && field.getPcr() != null) {
+            return field.getPcr().getValue();
+        }
+        return null;
+    }
+
+    private void write(MTSPacket packet, FileChannel channel) throws IOException {
+        try {
+            continuityFixer.fixContinuity(packet);
+        } catch (Exception e) {
+            LOG.warn("Failed to fix continuity. MTSPacket probably invalid");
+            return;
         }
+        ByteBuffer buffer = packet.getBuffer();
+        buffer.rewind();
+        if (writeBuffer.remaining() < buffer.remaining()) {
+            flush(channel);
+        }
+        writeBuffer.put(buffer);
     }
 
+    private void flush(FileChannel channel) throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
 }
@@ -3,6 +3,7 @@ package org.taktik.mpegts;
 import java.nio.ByteBuffer;
 import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,13 +32,15 @@ public class Streamer {
 
     private boolean sleepingEnabled;
     private String name;
+    private ThreadFactory threadFactory;
 
-    private Streamer(MTSSource source, MTSSink sink, int bufferSize, boolean sleepingEnabled, String name) {
+    private Streamer(MTSSource source, MTSSink sink, int bufferSize, boolean sleepingEnabled, String name, ThreadFactory threadFactory) {
         this.source = source;
         this.sink = sink;
         this.bufferSize = bufferSize;
         this.sleepingEnabled = sleepingEnabled;
         this.name = name;
+        this.threadFactory = threadFactory;
     }
 
     public void stream() throws InterruptedException {
@@ -54,12 +57,10 @@ public class Streamer {
         }
         log.info("Done PreBuffering");
 
-        bufferingThread = new Thread(this::fillBuffer, "Buffering ["+name+"]");
-        bufferingThread.setDaemon(true);
+        bufferingThread = createThread(this::fillBuffer, "Buffering ["+name+"]");
         bufferingThread.start();
 
-        streamingThread = new Thread(this::internalStream, "Streaming ["+name+"]");
-        streamingThread.setDaemon(true);
+        streamingThread = createThread(this::internalStream, "Streaming ["+name+"]");
         streamingThread.start();
 
         bufferingThread.join();
@@ -72,6 +73,18 @@ public class Streamer {
         }
     }
 
+    private Thread createThread(Runnable runnable, String threadName) {
+        if (threadFactory != null) {
+            Thread t = threadFactory.newThread(runnable);
+            t.setName(threadName);
+            return t;
+        } else {
+            Thread t = new Thread(runnable, threadName);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     public void stop() {
         streamingShouldStop = true;
         try {
@@ -331,6 +344,7 @@ public class Streamer {
         private int bufferSize = 1000;
         private boolean sleepingEnabled = false;
         private String name;
+        private ThreadFactory threadFactory;
 
         public StreamerBuilder setSink(MTSSink sink) {
             this.sink = sink;
@@ -357,10 +371,18 @@ public class Streamer {
             return this;
         }
 
+        /**
+         * Sets the factory for the buffering and the streaming thread. By default plain daemon threads are used
+         */
+        public StreamerBuilder setThreadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
         public Streamer build() {
             Preconditions.checkNotNull(sink);
             Preconditions.checkNotNull(source);
-            return new Streamer(source, sink, bufferSize, sleepingEnabled, name);
+            return new Streamer(source, sink, bufferSize, sleepingEnabled, name, threadFactory);
         }
 
     }
@@ -2,13 +2,13 @@ package org.taktik.mpegts.sinks;
 
 import org.taktik.mpegts.MTSPacket;
 
-import java.nio.channels.ByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class ByteChannelSink implements MTSSink {
 
-	private ByteChannel byteChannel;
+	private WritableByteChannel byteChannel;
 
-	private ByteChannelSink(ByteChannel byteChannel) {
+	private ByteChannelSink(WritableByteChannel byteChannel) {
 		this.byteChannel = byteChannel;
 	}
 
@@ -27,7 +27,7 @@ public class ByteChannelSink implements MTSSink {
 	}
 
 	public static class ByteChannelSinkBuilder {
-		private ByteChannel byteChannel;
+		private WritableByteChannel byteChannel;
 
 		private ByteChannelSinkBuilder(){}
 
@@ -35,7 +35,7 @@ public class ByteChannelSink implements MTSSink {
 			return new ByteChannelSink(byteChannel);
 		}
 
-		public ByteChannelSinkBuilder setByteChannel(ByteChannel byteChannel) {
+		public ByteChannelSinkBuilder setByteChannel(WritableByteChannel byteChannel) {
 			this.byteChannel = byteChannel;
 			return this;
 		}
@@ -0,0 +1,110 @@
+package org.taktik.mpegts.sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.taktik.mpegts.MTSPacket;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Writes each packet to a primary sink and then passes it on to any number of secondary sinks.
+ * Errors of the primary sink are thrown to the caller. A secondary sink, which throws an exception,
+ * is closed and removed, so that it can't break the primary sink.
+ */
+public class TeeSink implements MTSSink {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(TeeSink.class);
+
+    private MTSSink primary;
+    private List<MTSSink> secondaries;
+    private boolean closeSecondaries;
+
+    private TeeSink(MTSSink primary, List<MTSSink> secondaries, boolean closeSecondaries) {
+        this.primary = primary;
+        this.secondaries = new CopyOnWriteArrayList<>(secondaries);
+        this.closeSecondaries = closeSecondaries;
+    }
+
+    public static TeeSinkBuilder builder() {
+        return new TeeSinkBuilder();
+    }
+
+    @Override
+    public void send(MTSPacket packet) throws Exception {
+        packet.getBuffer().rewind();
+        primary.send(packet);
+        for (MTSSink sink : secondaries) {
+            try {
+                packet.getBuffer().rewind();
+                sink.send(packet);
+            } catch (Exception e) {
+                LOG.error("Sink {} failed and will be removed", sink.getClass().getName(), e);
+                secondaries.remove(sink);
+                closeQuietly(sink);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            primary.close();
+        } finally {
+            if (closeSecondaries) {
+                for (MTSSink sink : secondaries) {
+                    closeQuietly(sink);
+                }
+            }
+            secondaries.clear();
+        }
+    }
+
+    private void closeQuietly(MTSSink sink) {
+        try {
+            sink.close();
+        } catch (Exception e) {
+            LOG.error("Couldn't close sink {}", sink.getClass().getName(), e);
+        }
+    }
+
+    public static class TeeSinkBuilder {
+        private MTSSink primary;
+        private List<MTSSink> secondaries = new ArrayList<>();
+        private boolean closeSecondaries = true;
+
+        private TeeSinkBuilder() {}
+
+        public TeeSinkBuilder setPrimary(MTSSink primary) {
+            this.primary = primary;
+            return this;
+        }
+
+        public TeeSinkBuilder addSecondary(MTSSink sink) {
+            secondaries.add(sink);
+            return this;
+        }
+
+        public TeeSinkBuilder addSecondaries(List<? extends MTSSink> sinks) {
+            secondaries.addAll(sinks);
+            return this;
+        }
+
+        /**
+         * If set to false, the secondary sinks are only detached, when the TeeSink is closed.
+         * The caller is then responsible for closing them. Default is true.
+         */
+        public TeeSinkBuilder setCloseSecondaries(boolean closeSecondaries) {
+            this.closeSecondaries = closeSecondaries;
+            return this;
+        }
+
+        public TeeSink build() {
+            Preconditions.checkNotNull(primary);
+            return new TeeSink(primary, secondaries, closeSecondaries);
+        }
+    }
+}
@@ -23,10 +23,10 @@ public class BlockingMultiMTSSource extends AbstractMTSSource implements AutoClo
     private ProgressListener listener;
     private int lastProgress = 0;
 
-    private BlockingMultiMTSSource(boolean fixContinuity) {
+    private BlockingMultiMTSSource(boolean fixContinuity, ContinuityFixer continuityFixer) {
         this.fixContinuity = fixContinuity;
         if (fixContinuity) {
-            continuityFixer = new ContinuityFixer();
+            this.continuityFixer = continuityFixer != null ? continuityFixer : new ContinuityFixer();
         }
         this.sources = new LinkedBlockingQueue<>(10);
     }
@@ -99,6 +99,10 @@ public class BlockingMultiMTSSource extends AbstractMTSSource implements AutoClo
         this.totalSegments = total;
     }
 
+    public ContinuityFixer getContinuityFixer() {
+        return continuityFixer;
+    }
+
     @Override
     protected void closeInternal() throws Exception {
         for (MTSSource source : sources) {
@@ -112,19 +116,31 @@ public class BlockingMultiMTSSource extends AbstractMTSSource implements AutoClo
 
     public static class BlockingMultiMTSSourceBuilder {
         boolean fixContinuity = false;
+        ContinuityFixer continuityFixer;
         ProgressListener listener;
 
         public BlockingMultiMTSSourceBuilder setFixContinuity(boolean fixContinuity) {
             this.fixContinuity = fixContinuity;
             return this;
         }
+        /**
+         * Continues the continuity fixing of another source. The packets of this source are
+         * rewritten to follow the packets, which have already been passed through the given fixer.
+         * Implies setFixContinuity(true)
+         */
+        public BlockingMultiMTSSourceBuilder setContinuityFixer(ContinuityFixer continuityFixer) {
+            this.continuityFixer = continuityFixer;
+            this.fixContinuity = true;
+            return this;
+        }
+
         public BlockingMultiMTSSourceBuilder setProgressListener(ProgressListener listener) {
             this.listener = listener;
             return this;
         }
 
         public BlockingMultiMTSSource build() {
-            BlockingMultiMTSSource source = new BlockingMultiMTSSource(fixContinuity);
+            BlockingMultiMTSSource source = new BlockingMultiMTSSource(fixContinuity, continuityFixer);
             if(listener != null) {
                 source.setProgressListener(listener);
             }
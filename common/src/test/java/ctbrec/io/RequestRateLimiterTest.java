@@ -0,0 +1,63 @@
+package ctbrec.io;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ctbrec.io.RequestRateLimiter.Bucket;
+
+public class RequestRateLimiterTest {
+
+    @Test
+    public void testBurstIsNotDelayed() throws InterruptedException {
+        Bucket bucket = new Bucket(new RateLimit("", 1, 3));
+        long millis = measure(() -> {
+            for (int i = 0; i < 3; i++) {
+                bucket.acquire();
+            }
+        });
+        assertTrue("Burst took " + millis + " ms", millis < 500);
+    }
+
+    @Test
+    public void testRequestsAfterTheBurstAreDelayed() throws InterruptedException {
+        Bucket bucket = new Bucket(new RateLimit("", 10, 2));
+        long millis = measure(() -> {
+            for (int i = 0; i < 6; i++) {
+                bucket.acquire();
+            }
+        });
+        // 2 requests right away, the other 4 at 10 per second
+        assertTrue("Requests took " + millis + " ms", millis >= 350 && millis < 2000);
+    }
+
+    @Test
+    public void testBurstIsAtLeastOne() throws InterruptedException {
+        Bucket bucket = new Bucket(new RateLimit("", 10, 0));
+        long millis = measure(() -> {
+            bucket.acquire();
+            bucket.acquire();
+        });
+        assertTrue("Requests took " + millis + " ms", millis >= 50 && millis < 2000);
+    }
+
+    @Test
+    public void testPauseDelaysTheNextRequest() throws InterruptedException {
+        Bucket bucket = new Bucket(new RateLimit("", 100, 10));
+        bucket.pause(TimeUnit.MILLISECONDS.toNanos(300));
+        long millis = measure(bucket::acquire);
+        assertTrue("Request took " + millis + " ms", millis >= 250 && millis < 2000);
+    }
+
+    private long measure(Task task) throws InterruptedException {
+        long start = System.nanoTime();
+        task.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private interface Task {
+        void run() throws InterruptedException;
+    }
+}
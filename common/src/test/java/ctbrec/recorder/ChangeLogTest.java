@@ -0,0 +1,108 @@
+package ctbrec.recorder;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ctbrec.recorder.ChangeLog.Change;
+import ctbrec.recorder.ChangeLog.ChangeSet;
+
+public class ChangeLogTest {
+
+    private ChangeLog log;
+    private String id;
+
+    @Before
+    public void setUp() {
+        log = new ChangeLog();
+        log.publish("recording", state("a", "1", "b", "2"));
+        id = log.getChangesSince(null, 0).id;
+    }
+
+    @Test
+    public void testInitialSyncIsFull() {
+        ChangeSet changeSet = log.getChangesSince(null, 0);
+        assertTrue(changeSet.full);
+        assertEquals(2, changeSet.version);
+        assertEquals(2, changeSet.changes.size());
+        for (Change change : changeSet.changes) {
+            assertEquals(ChangeLog.INSERT, change.op);
+        }
+    }
+
+    @Test
+    public void testInsertUpdateDelete() {
+        log.publish("recording", state("a", "1", "b", "3", "c", "4"));
+        log.publish("recording", state("b", "3", "c", "4"));
+
+        ChangeSet changeSet = log.getChangesSince(id, 2);
+        assertFalse(changeSet.full);
+        assertEquals(5, changeSet.version);
+        assertEquals(3, changeSet.changes.size());
+        assertChange(changeSet.changes.get(0), 3, ChangeLog.UPDATE, "b", "3");
+        assertChange(changeSet.changes.get(1), 4, ChangeLog.INSERT, "c", "4");
+        assertChange(changeSet.changes.get(2), 5, ChangeLog.DELETE, "a", null);
+
+        changeSet = log.getChangesSince(id, 4);
+        assertEquals(1, changeSet.changes.size());
+        assertChange(changeSet.changes.get(0), 5, ChangeLog.DELETE, "a", null);
+    }
+
+    @Test
+    public void testUnchangedStateAddsNoChanges() {
+        log.publish("recording", state("a", "1", "b", "2"));
+        ChangeSet changeSet = log.getChangesSince(id, 2);
+        assertFalse(changeSet.full);
+        assertEquals(2, changeSet.version);
+        assertTrue(changeSet.changes.isEmpty());
+    }
+
+    @Test
+    public void testOverflowReturnsFullState() {
+        for (int i = 0; i <= ChangeLog.MAX_CHANGES; i++) {
+            log.publish("recording", state("a", Integer.toString(i), "b", "2"));
+        }
+        ChangeSet changeSet = log.getChangesSince(id, 2);
+        assertTrue(changeSet.full);
+        assertEquals(2, changeSet.changes.size());
+
+        // the last MAX_CHANGES changes are still available
+        long version = changeSet.version;
+        changeSet = log.getChangesSince(id, version - ChangeLog.MAX_CHANGES);
+        assertFalse(changeSet.full);
+        assertEquals(ChangeLog.MAX_CHANGES, changeSet.changes.size());
+    }
+
+    @Test
+    public void testForeignIdReturnsFullState() {
+        ChangeSet changeSet = log.getChangesSince("another instance", 2);
+        assertTrue(changeSet.full);
+        assertEquals(id, changeSet.id);
+        assertEquals(2, changeSet.changes.size());
+    }
+
+    @Test
+    public void testVersionFromTheFutureReturnsFullState() {
+        ChangeSet changeSet = log.getChangesSince(id, 3);
+        assertTrue(changeSet.full);
+    }
+
+    private void assertChange(Change change, long version, String op, String key, Object value) {
+        assertEquals(version, change.version);
+        assertEquals(op, change.op);
+        assertEquals(key, change.key);
+        assertEquals(value, change.value);
+    }
+
+    private Map<String, Object> state(String... keysAndValues) {
+        Map<String, Object> state = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            state.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,123 @@
+package ctbrec.recorder;
+
+import static ctbrec.Model.State.*;
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ctbrec.Model;
+import ctbrec.sites.chaturbate.ChaturbateModel;
+
+public class OnlineHistoryTest {
+
+    private static final Duration INTERVAL = Duration.ofMinutes(1);
+    private static final Duration MAX_INTERVAL = Duration.ofMinutes(15);
+
+    @Rule
+    public TemporaryFolder configDir = new TemporaryFolder();
+
+    private OnlineHistory history;
+    private Model model;
+    private Instant start = at(0, 10, 0);
+
+    @Before
+    public void setUp() {
+        history = new OnlineHistory(configDir.getRoot());
+        model = new ChaturbateModel();
+        model.setName("foo");
+        model.setUrl("https://chaturbate.com/foo/");
+    }
+
+    @Test
+    public void testNewModelIsCheckedAtTheNormalInterval() {
+        assertEquals(start.plus(INTERVAL), history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testOnlineModelIsCheckedAtTheNormalInterval() {
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+        Instant now = start.plus(Duration.ofDays(10));
+        assertEquals(now.plus(INTERVAL), history.nextCheck(model, ONLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testBackoffDoublesEveryDay() {
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+
+        Instant now = start.plus(Duration.ofHours(23));
+        assertEquals(now.plus(INTERVAL), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+        now = start.plus(Duration.ofDays(1));
+        assertEquals(now.plus(INTERVAL.multipliedBy(2)), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+        now = start.plus(Duration.ofDays(3));
+        assertEquals(now.plus(INTERVAL.multipliedBy(8)), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testBackoffIsLimited() {
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+
+        // 16 times the interval, but not more than the max interval
+        Instant now = start.plus(Duration.ofDays(4));
+        assertEquals(now.plus(INTERVAL.multipliedBy(16)), history.nextCheck(model, OFFLINE, now, INTERVAL, Duration.ofHours(1)));
+        now = start.plus(Duration.ofDays(30));
+        assertEquals(now.plus(MAX_INTERVAL), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testBackoffStartsAgainAfterTheModelWasOnline() {
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+        Instant online = start.plus(Duration.ofDays(5));
+        history.update(model, OFFLINE, ONLINE, online);
+
+        Instant now = online.plus(Duration.ofHours(12));
+        assertEquals(now.plus(INTERVAL), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testModelIsCheckedBeforeTheTypicalStartHour() {
+        // the model started at 20:05 on three days
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+        for (int day = 0; day < 3; day++) {
+            history.update(model, OFFLINE, ONLINE, at(day, 20, 5));
+            history.update(model, ONLINE, OFFLINE, at(day, 22, 5));
+        }
+
+        // far from 20:00 the backoff applies
+        Instant now = at(7, 10, 0);
+        assertEquals(now.plus(MAX_INTERVAL), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+
+        // shortly before 20:00 the check is moved to 15 minutes before the hour
+        now = at(7, 19, 40);
+        assertEquals(at(7, 19, 45), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+
+        // within the hour the normal interval applies
+        now = at(7, 20, 30);
+        assertEquals(now.plus(INTERVAL), history.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    @Test
+    public void testHistoryIsSaved() {
+        history.nextCheck(model, OFFLINE, start, INTERVAL, MAX_INTERVAL);
+        history.save();
+
+        OnlineHistory loaded = new OnlineHistory(configDir.getRoot());
+        loaded.load();
+        Instant now = start.plus(Duration.ofDays(3));
+        assertEquals(now.plus(INTERVAL.multipliedBy(8)), loaded.nextCheck(model, OFFLINE, now, INTERVAL, MAX_INTERVAL));
+    }
+
+    /**
+     * @return the given time of day in the local time zone, so that the hours of the day are predictable
+     */
+    private static Instant at(int day, int hour, int minute) {
+        return ZonedDateTime.of(2018, 10, 1, hour, minute, 0, 0, ZoneId.systemDefault()).plusDays(day).toInstant();
+    }
+}
@@ -0,0 +1,128 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File configDir;
+    private File journalFile;
+    private File a;
+    private File b;
+
+    @Before
+    public void setUp() throws IOException {
+        configDir = tmp.newFolder("config");
+        journalFile = new File(configDir, "recordings.journal");
+        a = new File(tmp.getRoot(), "a/2018-10-01_20-00").getAbsoluteFile();
+        b = new File(tmp.getRoot(), "b/2018-10-01_20-00").getAbsoluteFile();
+    }
+
+    @Test
+    public void testNewJournalDoesntExist() {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        assertFalse(journal.exists());
+        assertTrue(journal.getInFlight().isEmpty());
+    }
+
+    @Test
+    public void testInFlightRecordingsAreTracked() {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        journal.started(b);
+        journal.finished(a);
+        assertEquals(new HashSet<>(Arrays.asList(b)), journal.getInFlight());
+    }
+
+    @Test
+    public void testInFlightRecordingsAreLoaded() {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        journal.started(b);
+        journal.finished(b);
+
+        RecordingJournal loaded = new RecordingJournal(configDir);
+        assertTrue(loaded.exists());
+        assertEquals(new HashSet<>(Arrays.asList(a)), loaded.getInFlight());
+    }
+
+    @Test
+    public void testRepeatedEntriesAreNotWritten() throws IOException {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        journal.started(a);
+        journal.finished(a);
+        journal.finished(a);
+        assertEquals(2, lines().size());
+    }
+
+    @Test
+    public void testJournalIsCompactedAtMaxEntries() throws IOException {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        for (int i = 0; i < RecordingJournal.MAX_ENTRIES; i++) {
+            File rec = new File(tmp.getRoot(), "model/" + i).getAbsoluteFile();
+            journal.started(rec);
+            journal.finished(rec);
+        }
+        // only a is in flight. the journal has been rewritten and has grown again since then
+        List<String> lines = lines();
+        assertTrue("Journal has " + lines.size() + " lines", lines.size() <= RecordingJournal.MAX_ENTRIES);
+        assertEquals(new HashSet<>(Arrays.asList(a)), new RecordingJournal(configDir).getInFlight());
+    }
+
+    @Test
+    public void testCompactKeepsOnlyTheRecordingsInFlight() throws IOException {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        journal.started(b);
+        journal.finished(b);
+        journal.compact();
+        assertEquals(Arrays.asList("STARTED " + a.getAbsolutePath()), lines());
+    }
+
+    @Test
+    public void testTruncatedLastLineIsIgnored() throws IOException {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        journal.started(b);
+        // a crash while writing the entry
+        String partial = "FINISHED " + b.getAbsolutePath();
+        Files.write(journalFile.toPath(), partial.substring(0, partial.length() - 3).getBytes(UTF_8), APPEND);
+
+        RecordingJournal loaded = new RecordingJournal(configDir);
+        assertEquals(new HashSet<>(Arrays.asList(a, b)), loaded.getInFlight());
+
+        // the next entry doesn't get appended to the partial line
+        loaded.finished(a);
+        assertEquals(new HashSet<>(Arrays.asList(b)), new RecordingJournal(configDir).getInFlight());
+    }
+
+    @Test
+    public void testTruncatedTypeIsIgnored() throws IOException {
+        RecordingJournal journal = new RecordingJournal(configDir);
+        journal.started(a);
+        Files.write(journalFile.toPath(), "FINI".getBytes(UTF_8), APPEND);
+        assertEquals(new HashSet<>(Arrays.asList(a)), new RecordingJournal(configDir).getInFlight());
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(journalFile.toPath(), UTF_8);
+    }
+}
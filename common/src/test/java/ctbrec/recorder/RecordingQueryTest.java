@@ -0,0 +1,159 @@
+package ctbrec.recorder;
+
+import static ctbrec.Recording.State.*;
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ctbrec.Recording;
+import ctbrec.Recording.State;
+import ctbrec.recorder.RecordingQuery.SortField;
+
+public class RecordingQueryTest {
+
+    private static final Instant T0 = Instant.parse("2018-10-01T20:00:00Z");
+
+    private List<Recording> recordings;
+
+    @Before
+    public void setUp() {
+        recordings = new ArrayList<>();
+        recordings.add(recording("anna/2018-10-01_20-00", "Chaturbate", T0, FINISHED, 300));
+        recordings.add(recording("bob/2018-10-01_20-00", "MyFreeCams", T0, FINISHED, 100));
+        recordings.add(recording("carla/2018-10-01_21-00", "Chaturbate", T0.plusSeconds(3600), RECORDING, 200));
+        recordings.add(recording("anna/2018-10-02_20-00", "Chaturbate", T0.plusSeconds(86400), FINISHED, 400));
+    }
+
+    @Test
+    public void testEmptyQueryReturnsAllNewestFirst() {
+        RecordingQuery.Result result = new RecordingQuery().execute(recordings);
+        assertEquals(4, result.total);
+        // bob and anna started at the same time, the path decides
+        assertPaths(result, "anna/2018-10-02_20-00", "carla/2018-10-01_21-00", "bob/2018-10-01_20-00", "anna/2018-10-01_20-00");
+    }
+
+    @Test
+    public void testTiebreakByPathIsStableInBothDirections() {
+        RecordingQuery query = new RecordingQuery();
+        query.ascending = true;
+        assertPaths(query.execute(recordings), "anna/2018-10-01_20-00", "bob/2018-10-01_20-00", "carla/2018-10-01_21-00", "anna/2018-10-02_20-00");
+
+        // the order of the input doesn't matter
+        List<Recording> reversed = new ArrayList<>(recordings);
+        Collections.reverse(reversed);
+        assertPaths(query.execute(reversed), "anna/2018-10-01_20-00", "bob/2018-10-01_20-00", "carla/2018-10-01_21-00", "anna/2018-10-02_20-00");
+    }
+
+    @Test
+    public void testPagesDontOverlap() {
+        RecordingQuery query = new RecordingQuery();
+        query.limit = 2;
+        RecordingQuery.Result first = query.execute(recordings);
+        query.offset = 2;
+        RecordingQuery.Result second = query.execute(recordings);
+        assertEquals(4, first.total);
+        assertEquals(4, second.total);
+        assertPaths(first, "anna/2018-10-02_20-00", "carla/2018-10-01_21-00");
+        assertPaths(second, "bob/2018-10-01_20-00", "anna/2018-10-01_20-00");
+    }
+
+    @Test
+    public void testOffsetAndLimitBounds() {
+        RecordingQuery query = new RecordingQuery();
+        query.offset = -5;
+        query.limit = 1;
+        assertPaths(query.execute(recordings), "anna/2018-10-02_20-00");
+
+        query.offset = 3;
+        query.limit = 10;
+        assertPaths(query.execute(recordings), "anna/2018-10-01_20-00");
+
+        query.offset = 4;
+        assertPaths(query.execute(recordings));
+
+        query.offset = 100;
+        RecordingQuery.Result result = query.execute(recordings);
+        assertEquals(4, result.total);
+        assertPaths(result);
+
+        query.offset = 1;
+        query.limit = Integer.MAX_VALUE;
+        assertEquals(3, query.execute(recordings).recordings.size());
+
+        // no limit
+        query.offset = 0;
+        query.limit = 0;
+        assertEquals(4, query.execute(recordings).recordings.size());
+    }
+
+    @Test
+    public void testDateRangeIncludesFromAndExcludesTo() {
+        RecordingQuery query = new RecordingQuery();
+        query.ascending = true;
+        query.from = T0;
+        query.to = T0.plusSeconds(3600);
+        assertPaths(query.execute(recordings), "anna/2018-10-01_20-00", "bob/2018-10-01_20-00");
+
+        query.from = T0.plusMillis(1);
+        query.to = T0.plusSeconds(3600).plusMillis(1);
+        assertPaths(query.execute(recordings), "carla/2018-10-01_21-00");
+    }
+
+    @Test
+    public void testRecordingsWithoutStartDateDontMatchADateRange() {
+        Recording noDate = recording("dora/unknown", "Chaturbate", null, FINISHED, 1);
+        recordings.add(noDate);
+        RecordingQuery query = new RecordingQuery();
+        assertEquals(5, query.execute(recordings).total);
+        query.from = Instant.EPOCH;
+        assertEquals(4, query.execute(recordings).total);
+    }
+
+    @Test
+    public void testFilters() {
+        RecordingQuery query = new RecordingQuery();
+        query.modelName = "AN";
+        assertEquals(2, query.execute(recordings).total);
+
+        query = new RecordingQuery();
+        query.siteName = "myfreecams";
+        assertPaths(query.execute(recordings), "bob/2018-10-01_20-00");
+
+        query = new RecordingQuery();
+        query.states = Arrays.asList(RECORDING, POST_PROCESSING);
+        assertPaths(query.execute(recordings), "carla/2018-10-01_21-00");
+    }
+
+    @Test
+    public void testSortBySize() {
+        RecordingQuery query = new RecordingQuery();
+        query.sortBy = SortField.SIZE;
+        assertPaths(query.execute(recordings), "anna/2018-10-02_20-00", "anna/2018-10-01_20-00", "carla/2018-10-01_21-00", "bob/2018-10-01_20-00");
+    }
+
+    private void assertPaths(RecordingQuery.Result result, String... paths) {
+        List<String> actual = new ArrayList<>();
+        for (Recording rec : result.recordings) {
+            actual.add(rec.getPath());
+        }
+        assertEquals(Arrays.asList(paths), actual);
+    }
+
+    private Recording recording(String path, String site, Instant start, State state, long size) {
+        Recording rec = new Recording();
+        rec.setPath(path);
+        rec.setModelName(path.substring(0, path.indexOf('/')));
+        rec.setSiteName(site);
+        rec.setStartDate(start);
+        rec.setStatus(state);
+        rec.setSizeInByte(size);
+        return rec;
+    }
+}
@@ -0,0 +1,147 @@
+package ctbrec.recorder;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ctbrec.recorder.SegmentPack.Entry;
+
+public class SegmentPackTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File recDir;
+
+    @Before
+    public void setUp() {
+        recDir = tmp.getRoot();
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00002.ts", bytes("second"), 2f);
+            pack.append("00001.ts", bytes("first"), 1.5f);
+        }
+
+        assertTrue(SegmentPack.exists(recDir));
+        List<Entry> entries = SegmentPack.readIndex(recDir);
+        assertEquals(2, entries.size());
+        // sorted by name, not by the order of the downloads
+        assertEntry(entries.get(0), "00001.ts", 6, 5, 1.5f);
+        assertEntry(entries.get(1), "00002.ts", 0, 6, 2f);
+        assertEquals("first", string(SegmentPack.read(recDir, entries.get(0))));
+        assertEquals("second", string(SegmentPack.read(recDir, entries.get(1))));
+    }
+
+    @Test
+    public void testSpacesInNamesAreReplaced() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("segment 1.ts", bytes("data"), 1f);
+        }
+        assertNotNull(SegmentPack.readIndexByName(recDir).get("segment_1.ts"));
+    }
+
+    @Test
+    public void testReopenedPackIsAppended() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00001.ts", bytes("first"), 1f);
+        }
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00002.ts", bytes("second"), 1f);
+        }
+
+        List<Entry> entries = SegmentPack.readIndex(recDir);
+        assertEquals(2, entries.size());
+        assertEntry(entries.get(1), "00002.ts", 5, 6, 1f);
+        assertEquals("first", string(SegmentPack.read(recDir, entries.get(0))));
+        assertEquals("second", string(SegmentPack.read(recDir, entries.get(1))));
+    }
+
+    @Test
+    public void testPartialLastLineIsIgnored() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00001.ts", bytes("first"), 1f);
+        }
+        // a crash while writing the index line of the second segment
+        append(SegmentPack.PACK_FILE, "second");
+        append(SegmentPack.INDEX_FILE, "00002.ts 5");
+        assertEquals(1, SegmentPack.readIndex(recDir).size());
+
+        // the next entry starts on a new line
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00003.ts", bytes("third"), 1f);
+        }
+        List<Entry> entries = SegmentPack.readIndex(recDir);
+        assertEquals(2, entries.size());
+        assertEquals("00001.ts", entries.get(0).name);
+        assertEquals("00003.ts", entries.get(1).name);
+        assertEquals("third", string(SegmentPack.read(recDir, entries.get(1))));
+    }
+
+    @Test
+    public void testUnreferencedBytesAreOverwritten() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00001.ts", bytes("first"), 1f);
+        }
+        // a crash after writing the segment, but before writing its index line
+        append(SegmentPack.PACK_FILE, "unreferenced");
+
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00002.ts", bytes("second"), 1f);
+        }
+        List<Entry> entries = SegmentPack.readIndex(recDir);
+        assertEntry(entries.get(1), "00002.ts", 5, 6, 1f);
+        assertEquals("second", string(SegmentPack.read(recDir, entries.get(1))));
+        assertEquals("firstsecond", string(SegmentPack.read(recDir, entry(0, 11))));
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        try (SegmentPack pack = SegmentPack.open(recDir)) {
+            pack.append("00001.ts", bytes("first"), 1f);
+        }
+        SegmentPack.delete(recDir);
+        assertFalse(SegmentPack.exists(recDir));
+        assertFalse(new File(recDir, SegmentPack.PACK_FILE).exists());
+        assertTrue(SegmentPack.readIndex(recDir).isEmpty());
+    }
+
+    private void assertEntry(Entry entry, String name, long offset, long length, float duration) {
+        assertEquals(name, entry.name);
+        assertEquals(offset, entry.offset);
+        assertEquals(length, entry.length);
+        assertEquals(duration, entry.duration, 0.0001f);
+    }
+
+    private Entry entry(long offset, long length) {
+        Entry entry = new Entry();
+        entry.name = "all";
+        entry.offset = offset;
+        entry.length = length;
+        return entry;
+    }
+
+    private void append(String file, String content) throws IOException {
+        Files.write(new File(recDir, file).toPath(), bytes(content), APPEND);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, UTF_8);
+    }
+}
@@ -1,12 +1,18 @@
 package ctbrec.recorder.server;
+import static java.nio.file.StandardOpenOption.*;
 import static javax.servlet.http.HttpServletResponse.*;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -19,24 +25,33 @@ import com.iheartradio.m3u8.ParseException;
 import com.iheartradio.m3u8.PlaylistException;
 
 import ctbrec.Config;
+import ctbrec.recorder.SegmentPack;
+import ctbrec.recorder.StoragePool;
 
 public class HlsServlet extends AbstractCtbrecServlet {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(HlsServlet.class);
 
-    private Config config;
+    private static final int MAX_CACHED_INDEXES = 16;
+
+    private StoragePool storagePool;
+    private Map<File, CachedIndex> packIndexes = new LinkedHashMap<File, CachedIndex>(MAX_CACHED_INDEXES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, CachedIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
 
     public HlsServlet(Config config) {
-        this.config = config;
+        this.storagePool = new StoragePool(config);
     }
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String request = req.getRequestURI().substring(5);
-        File recordingsDir = new File(config.getSettings().recordingsDir);
-        File requestedFile = new File(recordingsDir, request);
+        File requestedFile = storagePool.resolve(request);
 
-        if (requestedFile.getCanonicalPath().startsWith(config.getSettings().recordingsDir)) {
+        if (storagePool.getVolume(requestedFile.getCanonicalFile()) != null) {
             if (requestedFile.getName().equals("playlist.m3u8")) {
                 try {
                     boolean isRequestAuthenticated = checkAuthentication(req, req.getRequestURI());
@@ -62,6 +77,8 @@ public class HlsServlet extends AbstractCtbrecServlet {
             } else {
                 if (requestedFile.exists()) {
                     serveSegment(req, resp, requestedFile);
+                } else if (SegmentPack.exists(requestedFile.getParentFile())) {
+                    servePackedSegment(resp, requestedFile);
                 } else {
                     error404(req, resp);
                 }
@@ -80,6 +97,56 @@ public class HlsServlet extends AbstractCtbrecServlet {
         serveFile(resp, requestedFile, "application/octet-stream");
     }
 
+    /**
+     * Serves a segment, which is stored in the pack file of the recording, as byte range of the pack
+     */
+    private void servePackedSegment(HttpServletResponse resp, File requestedFile) throws IOException {
+        File recDir = requestedFile.getParentFile();
+        SegmentPack.Entry entry = getPackIndex(recDir).get(requestedFile.getName());
+        if (entry == null) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        LOG.trace("Serving segment {} from pack {}", entry.name, recDir);
+        resp.setStatus(200);
+        resp.setContentLengthLong(entry.length);
+        resp.setContentType("application/octet-stream");
+        try (FileChannel pack = FileChannel.open(new File(recDir, SegmentPack.PACK_FILE).toPath(), READ)) {
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            long position = entry.offset;
+            long end = entry.offset + entry.length;
+            while (position < end) {
+                long transferred = pack.transferTo(position, end - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Segment " + entry.name + " exceeds the pack of " + recDir);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * A player requests the segments one after the other, so the index of the recording is kept, until it changes
+     */
+    private Map<String, SegmentPack.Entry> getPackIndex(File recDir) throws IOException {
+        long indexSize = new File(recDir, SegmentPack.INDEX_FILE).length();
+        synchronized (packIndexes) {
+            CachedIndex cached = packIndexes.get(recDir);
+            if (cached == null || cached.indexSize != indexSize) {
+                cached = new CachedIndex();
+                cached.indexSize = indexSize;
+                cached.entries = SegmentPack.readIndexByName(recDir);
+                packIndexes.put(recDir, cached);
+            }
+            return cached.entries;
+        }
+    }
+
+    private static class CachedIndex {
+        private long indexSize;
+        private Map<String, SegmentPack.Entry> entries;
+    }
+
     private void servePlaylist(HttpServletRequest req, HttpServletResponse resp, File requestedFile) throws FileNotFoundException, IOException, ParseException, PlaylistException {
         serveFile(resp, requestedFile, "application/x-mpegURL");
     }
@@ -87,7 +154,7 @@ public class HlsServlet extends AbstractCtbrecServlet {
     private void serveFile(HttpServletResponse resp, File file, String contentType) throws FileNotFoundException, IOException {
         LOG.trace("Serving segment {}", file.getAbsolutePath());
         resp.setStatus(200);
-        resp.setContentLength((int) file.length());
+        resp.setContentLengthLong(file.length());
         resp.setContentType(contentType);
         try(FileInputStream fin = new FileInputStream(file)) {
             byte[] buffer = new byte[1024 * 100];
@@ -67,8 +67,8 @@ public class HttpServer {
             LOG.info("HMAC authentication is enabled");
         }
         recorder = new LocalRecorder(config);
-        OnlineMonitor monitor = new OnlineMonitor(recorder);
-        monitor.start();
+        onlineMonitor = new OnlineMonitor(recorder);
+        onlineMonitor.start();
         for (Site site : sites) {
             if(site.isEnabled()) {
                 site.init();
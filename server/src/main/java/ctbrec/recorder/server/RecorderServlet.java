@@ -1,11 +1,16 @@
 package ctbrec.recorder.server;
 
+import static ctbrec.event.Event.Type.*;
 import static javax.servlet.http.HttpServletResponse.*;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -14,14 +19,19 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.eventbus.Subscribe;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 
 import ctbrec.Model;
 import ctbrec.Recording;
+import ctbrec.event.Event;
+import ctbrec.event.EventBusHolder;
 import ctbrec.io.InstantJsonAdapter;
 import ctbrec.io.ModelJsonAdapter;
+import ctbrec.recorder.ChangeLog;
 import ctbrec.recorder.Recorder;
+import ctbrec.recorder.RecordingQuery;
 import ctbrec.sites.Site;
 
 public class RecorderServlet extends AbstractCtbrecServlet {
@@ -32,9 +42,35 @@ public class RecorderServlet extends AbstractCtbrecServlet {
 
     private List<Site> sites;
 
+    private ChangeLog changeLog = new ChangeLog();
+
+    private long lastPublish = 0;
+
+    /** set by the events and the requests, which change the models, so that they are only published, if they have changed */
+    private volatile boolean modelsChanged = true;
+
+    private volatile boolean recordingsChanged = true;
+
+    /** true, if the last publication contained recordings. Their size grows, so they are published until they are finished */
+    private boolean recordingsInProgress = false;
+
     public RecorderServlet(Recorder recorder, List<Site> sites) {
         this.recorder = recorder;
         this.sites = sites;
+        registerEventBusListener();
+    }
+
+    private void registerEventBusListener() {
+        EventBusHolder.BUS.register(new Object() {
+            @Subscribe
+            public void recorderEvent(Event e) {
+                if (e.getType() == RECORDING_STATUS_CHANGED) {
+                    recordingsChanged = true;
+                } else if (e.getType() == MODEL_STATUS_CHANGED) {
+                    modelsChanged = true;
+                }
+            }
+        });
     }
 
     @Override
@@ -64,12 +100,14 @@ public class RecorderServlet extends AbstractCtbrecServlet {
                 case "start":
                     LOG.debug("Starting recording for model {} - {}", request.model.getName(), request.model.getUrl());
                     recorder.startRecording(request.model);
+                    modelsChanged = true;
                     String response = "{\"status\": \"success\", \"msg\": \"Recording started\"}";
                     resp.getWriter().write(response);
                     break;
                 case "stop":
                     response = "{\"status\": \"success\", \"msg\": \"Recording stopped\"}";
                     recorder.stopRecording(request.model);
+                    modelsChanged = true;
                     resp.getWriter().write(response);
                     break;
                 case "list":
@@ -99,12 +137,22 @@ public class RecorderServlet extends AbstractCtbrecServlet {
                     resp.getWriter().write("]}");
                     break;
                 case "recordings":
-                    resp.getWriter().write("{\"status\": \"success\", \"msg\": \"List of recordings\", \"recordings\": [");
+                    RecordingQuery query = request.query != null ? request.query : new RecordingQuery();
+                    RecordingQuery.Result result = recorder.queryRecordings(query);
+                    resp.getWriter().write("{\"status\": \"success\", \"msg\": \"List of recordings\", \"total\": " + result.total + ", \"recordings\": [");
                     JsonAdapter<Recording> recAdapter = moshi.adapter(Recording.class);
-                    List<Recording> recordings = recorder.getRecordings();
-                    for (Iterator<Recording> iterator = recordings.iterator(); iterator.hasNext();) {
+                    JsonAdapter<Object> valueAdapter = moshi.adapter(Object.class);
+                    for (Iterator<Recording> iterator = result.recordings.iterator(); iterator.hasNext();) {
                         Recording recording = iterator.next();
-                        resp.getWriter().write(recAdapter.toJson(recording));
+                        if (query.fields != null && !query.fields.isEmpty()) {
+                            // only send the requested properties
+                            @SuppressWarnings("unchecked")
+                            Map<String, Object> values = (Map<String, Object>) recAdapter.toJsonValue(recording);
+                            values.keySet().retainAll(query.fields);
+                            resp.getWriter().write(valueAdapter.toJson(values));
+                        } else {
+                            resp.getWriter().write(recAdapter.toJson(recording));
+                        }
                         if (iterator.hasNext()) {
                             resp.getWriter().write(',');
                         }
@@ -112,31 +160,60 @@ public class RecorderServlet extends AbstractCtbrecServlet {
                     resp.getWriter().write("]}");
                     break;
                 case "delete":
-                    String path = request.recording;
-                    Recording rec = new Recording(path);
-                    recorder.delete(rec);
+                    List<Recording> toDelete = new ArrayList<>();
+                    if (request.recording != null) {
+                        toDelete.add(new Recording(request.recording));
+                    }
+                    if (request.recordings != null) {
+                        for (String path : request.recordings) {
+                            toDelete.add(new Recording(path));
+                        }
+                    }
+                    recorder.delete(toDelete);
+                    recordingsChanged = true;
                     recAdapter = moshi.adapter(Recording.class);
                     resp.getWriter().write("{\"status\": \"success\", \"msg\": \"List of recordings\", \"recordings\": [");
-                    resp.getWriter().write(recAdapter.toJson(rec));
+                    for (Iterator<Recording> iterator = toDelete.iterator(); iterator.hasNext();) {
+                        resp.getWriter().write(recAdapter.toJson(iterator.next()));
+                        if (iterator.hasNext()) {
+                            resp.getWriter().write(',');
+                        }
+                    }
                     resp.getWriter().write("]}");
                     break;
                 case "switch":
                     recorder.switchStreamSource(request.model);
+                    modelsChanged = true;
                     response = "{\"status\": \"success\", \"msg\": \"Resolution switched\"}";
                     resp.getWriter().write(response);
                     break;
+                case "priority":
+                    recorder.priorityChanged(request.model);
+                    modelsChanged = true;
+                    response = "{\"status\": \"success\", \"msg\": \"Priority changed\"}";
+                    resp.getWriter().write(response);
+                    break;
                 case "suspend":
                     LOG.debug("Suspend recording for model {} - {}", request.model.getName(), request.model.getUrl());
                     recorder.suspendRecording(request.model);
+                    modelsChanged = true;
                     response = "{\"status\": \"success\", \"msg\": \"Recording suspended\"}";
                     resp.getWriter().write(response);
                     break;
                 case "resume":
                     LOG.debug("Resume recording for model {} - {}", request.model.getName(), request.model.getUrl());
                     recorder.resumeRecording(request.model);
+                    modelsChanged = true;
                     response = "{\"status\": \"success\", \"msg\": \"Recording resumed\"}";
                     resp.getWriter().write(response);
                     break;
+                case "changes":
+                    publishState(moshi);
+                    ChangeLog.ChangeSet changes = changeLog.getChangesSince(request.id, request.version);
+                    resp.getWriter().write("{\"status\": \"success\", \"msg\": \"Changes\", \"changes\": ");
+                    resp.getWriter().write(moshi.adapter(ChangeLog.ChangeSet.class).toJson(changes));
+                    resp.getWriter().write("}");
+                    break;
                 case "space":
                     response = "{\"status\": \"success\", \"spaceTotal\": "+recorder.getTotalSpaceBytes()+", \"spaceFree\": "+recorder.getFreeSpaceBytes()+"}";
                     resp.getWriter().write(response);
@@ -160,9 +237,61 @@ public class RecorderServlet extends AbstractCtbrecServlet {
         }
     }
 
+    /**
+     * Publishes the changed state of the recorder to the change log. All clients poll for changes, so we only
+     * do this once per second. The models are only published after an event or a request has changed them.
+     * Only the recordings in progress are published, because the finished ones don't change anymore and can be
+     * thousands. The clients query those with the "recordings" action.
+     */
+    private synchronized void publishState(Moshi moshi) throws Exception {
+        long now = System.currentTimeMillis();
+        if (now - lastPublish < 1000) {
+            return;
+        }
+        lastPublish = now;
+
+        if (modelsChanged) {
+            modelsChanged = false;
+            JsonAdapter<Model> modelAdapter = new ModelJsonAdapter();
+            Map<String, Object> models = new HashMap<>();
+            for (Model model : recorder.getModelsRecording()) {
+                models.put(model.getUrl(), modelAdapter.toJsonValue(model));
+            }
+            changeLog.publish("model", models);
+
+            Map<String, Object> onlineModels = new HashMap<>();
+            for (Model model : recorder.getOnlineModels()) {
+                onlineModels.put(model.getUrl(), modelAdapter.toJsonValue(model));
+            }
+            changeLog.publish("onlineModel", onlineModels);
+        }
+
+        if (recordingsChanged || recordingsInProgress) {
+            recordingsChanged = false;
+            JsonAdapter<Recording> recAdapter = moshi.adapter(Recording.class);
+            Map<String, Object> recordings = new HashMap<>();
+            for (Recording recording : recorder.getRecordingsInProgress()) {
+                recordings.put(recording.getPath(), recAdapter.toJsonValue(recording));
+            }
+            changeLog.publish("recording", recordings);
+            recordingsInProgress = !recordings.isEmpty();
+        }
+
+        Map<String, Object> space = new HashMap<>();
+        space.put("spaceTotal", recorder.getTotalSpaceBytes());
+        space.put("spaceFree", recorder.getFreeSpaceBytes());
+        changeLog.publish("space", Collections.singletonMap("space", space));
+    }
+
     private static class Request {
         public String action;
         public Model model;
         public String recording;
+        /** the paths of the recordings to delete */
+        public List<String> recordings;
+        public RecordingQuery query;
+        /** the id and version of the change log, which the client has seen last */
+        public String id;
+        public long version;
     }
 }